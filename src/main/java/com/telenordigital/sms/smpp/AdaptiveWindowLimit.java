@@ -0,0 +1,75 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.telenordigital.sms.smpp.config.AdaptiveWindowConfig;
+
+/**
+ * Sizes the window from the submit_sm round trip times, in the style of TCP Vegas. The shortest
+ * recent RTT is taken as the RTT of an idle SMSC, and {@code limit * (1 - minRtt / rtt)} estimates
+ * how many requests are queued at the SMSC. The limit grows while that queue is short and shrinks
+ * when it builds up, so the window settles near the bandwidth-delay product. Used on the event loop
+ * only, {@link #limit()} may be read from any thread.
+ */
+class AdaptiveWindowLimit {
+  // the idle RTT is re-measured after this many samples, to follow changes of the link
+  private static final int PROBE_SAMPLES = 1000;
+
+  private final int minLimit;
+  private final int maxLimit;
+
+  private volatile int limit;
+  private long minRttNanos = Long.MAX_VALUE;
+  private long probeMinRttNanos = Long.MAX_VALUE;
+  private int samples;
+
+  AdaptiveWindowLimit(final AdaptiveWindowConfig config, final int initialLimit) {
+    this.minLimit = config.minWindowSize();
+    this.maxLimit = config.maxWindowSize();
+    this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+  }
+
+  int limit() {
+    return limit;
+  }
+
+  void onSample(final long rttNanos, final int inFlight) {
+    probeMinRttNanos = Math.min(probeMinRttNanos, rttNanos);
+    minRttNanos = Math.min(minRttNanos, rttNanos);
+    if (++samples >= PROBE_SAMPLES) {
+      samples = 0;
+      minRttNanos = probeMinRttNanos;
+      probeMinRttNanos = Long.MAX_VALUE;
+    }
+
+    final int current = limit;
+    final double queued = current * (1 - (double) minRttNanos / rttNanos);
+    // larger windows tolerate a longer queue
+    final double alpha = Math.max(1, 3 * Math.log10(current));
+    final double beta = Math.max(2, 6 * Math.log10(current));
+    if (queued > beta) {
+      limit = Math.max(minLimit, current - 1);
+    } else if (queued < alpha && inFlight * 2 >= current) {
+      // only grow when the window is actually used
+      limit = Math.min(maxLimit, current + 1);
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.telenordigital.sms.smpp.config.CircuitBreakerConfig;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Takes a connection out of routing when its submits keep failing, long before the read timeout
+ * closes a bind which is up but no longer answering. After the open time a few probe submits are
+ * let through, and the breaker closes again once they succeed.
+ *
+ * <p>Fed from the event loop of the channel, the state is read from any thread.
+ */
+class CircuitBreaker {
+  private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  static final int ESME_RSYSERR = 0x08;
+
+  private final String name;
+  private final int failureThreshold;
+  private final long stallNanos;
+  private final long openNanos;
+  private final int halfOpenProbes;
+  private final ScheduledExecutorService scheduler;
+  // called on every state change, without holding the lock of the breaker
+  private final Runnable listener;
+
+  private volatile SmppCircuitState state = SmppCircuitState.CLOSED;
+  private int failures;
+  private int probes;
+  // probes the group routed to the connection, not yet through the outbound handler
+  private int reservedProbes;
+  private int probeSuccesses;
+  private long probesStartedNanos;
+  private ScheduledFuture<?> halfOpenTimer;
+
+  CircuitBreaker(
+      final String name,
+      final CircuitBreakerConfig config,
+      final ScheduledExecutorService scheduler,
+      final Runnable listener) {
+    this.name = name;
+    this.failureThreshold = config.failureThreshold();
+    this.stallNanos = TimeUnit.MILLISECONDS.toNanos(config.stallMillis());
+    this.openNanos = TimeUnit.MILLISECONDS.toNanos(config.openMillis());
+    this.halfOpenProbes = config.halfOpenProbes();
+    this.scheduler = scheduler;
+    this.listener = listener;
+  }
+
+  /** Whether the status tells the SMSC is failing, rather than the message being rejected. */
+  static boolean isFailure(final int commandStatus) {
+    return commandStatus == ESME_RSYSERR || commandStatus == CongestionController.ESME_RMSGQFUL;
+  }
+
+  SmppCircuitState state() {
+    return state;
+  }
+
+  long stallNanos() {
+    return stallNanos;
+  }
+
+  /** Whether a submit may be sent, counting it as one of the probes while half-open. */
+  synchronized boolean tryAcquire(final long nowNanos) {
+    if (state == SmppCircuitState.CLOSED) {
+      return true;
+    }
+    if (state != SmppCircuitState.HALF_OPEN) {
+      return false;
+    }
+    if (reservedProbes > 0) {
+      reservedProbes--;
+      return true;
+    }
+    return acquireProbe(nowNanos);
+  }
+
+  /**
+   * Takes one of the probes while half-open, for a submit routed to the connection only as a probe.
+   * The submit then passes {@link #tryAcquire} without taking another one.
+   */
+  synchronized boolean tryReserveProbe(final long nowNanos) {
+    if (state != SmppCircuitState.HALF_OPEN || !acquireProbe(nowNanos)) {
+      return false;
+    }
+    reservedProbes++;
+    return true;
+  }
+
+  private boolean acquireProbe(final long nowNanos) {
+    // probes lost with the connection or stuck in the queue never answer, try new ones
+    if (nowNanos - probesStartedNanos >= openNanos) {
+      probesStartedNanos = nowNanos;
+      probes = 0;
+      reservedProbes = 0;
+    }
+    if (probes < halfOpenProbes) {
+      probes++;
+      return true;
+    }
+    return false;
+  }
+
+  void onResponse(final int commandStatus) {
+    if (isFailure(commandStatus)) {
+      onFailure();
+    } else {
+      onSuccess();
+    }
+  }
+
+  void onSuccess() {
+    final boolean changed;
+    synchronized (this) {
+      if (state == SmppCircuitState.CLOSED) {
+        failures = 0;
+        return;
+      }
+      changed = state == SmppCircuitState.HALF_OPEN && ++probeSuccesses >= halfOpenProbes;
+      if (changed) {
+        LOG.info("Circuit breaker of {} closed", name);
+        state = SmppCircuitState.CLOSED;
+        failures = 0;
+      }
+    }
+    if (changed) {
+      listener.run();
+    }
+  }
+
+  void onFailure() {
+    final boolean changed;
+    synchronized (this) {
+      changed =
+          state == SmppCircuitState.HALF_OPEN
+              || (state == SmppCircuitState.CLOSED && ++failures >= failureThreshold);
+      if (changed) {
+        open();
+      }
+    }
+    if (changed) {
+      listener.run();
+    }
+  }
+
+  /** Opens the breaker regardless of the failure count, e.g. when the SMSC stopped answering. */
+  void trip() {
+    final boolean changed;
+    synchronized (this) {
+      changed = state != SmppCircuitState.OPEN;
+      if (changed) {
+        open();
+      }
+    }
+    if (changed) {
+      listener.run();
+    }
+  }
+
+  private void open() {
+    LOG.warn(
+        "Circuit breaker of {} opened for {}ms", name, TimeUnit.NANOSECONDS.toMillis(openNanos));
+    state = SmppCircuitState.OPEN;
+    failures = 0;
+    try {
+      halfOpenTimer = scheduler.schedule(this::halfOpen, openNanos, TimeUnit.NANOSECONDS);
+    } catch (final RejectedExecutionException e) {
+      // the connection is closing
+      LOG.debug("Circuit breaker of {} not scheduled to half-open: {}", name, e.toString());
+    }
+  }
+
+  private void halfOpen() {
+    synchronized (this) {
+      halfOpenTimer = null;
+      if (state != SmppCircuitState.OPEN) {
+        return;
+      }
+      LOG.info("Circuit breaker of {} half-open, probing", name);
+      state = SmppCircuitState.HALF_OPEN;
+      probes = 0;
+      reservedProbes = 0;
+      probeSuccesses = 0;
+      probesStartedNanos = System.nanoTime();
+    }
+    listener.run();
+  }
+
+  synchronized void close() {
+    if (halfOpenTimer != null) {
+      halfOpenTimer.cancel(false);
+      halfOpenTimer = null;
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.telenordigital.sms.smpp.config.CongestionConfig;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adjusts the submit rate of a bind from the submit_sm_resp statuses (AIMD). The rate is cut
+ * multiplicatively when the SMSC answers ESME_RTHROTTLED or ESME_RMSGQFUL, and grows additively
+ * while it accepts the messages. Used on the event loop only.
+ */
+class CongestionController {
+  static final int ESME_RMSGQFUL = 0x14;
+  static final int ESME_RTHROTTLED = 0x58;
+  // responses after an idle period should not ramp the rate up in one go
+  private static final long MAX_INCREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final TokenBucket bucket;
+  private final double maxRate;
+  private final double minRate;
+  private final double decreaseFactor;
+  private final double increasePerNano;
+  private final long cooldownNanos;
+
+  private long lastDecreaseNanos;
+  private long lastIncreaseNanos;
+
+  CongestionController(
+      final TokenBucket bucket,
+      final double maxRate,
+      final CongestionConfig config,
+      final long nowNanos) {
+    this.bucket = bucket;
+    this.maxRate = maxRate;
+    this.minRate = config.minSubmitsPerSecond();
+    this.decreaseFactor = config.decreaseFactor();
+    this.increasePerNano = config.increasePerSecond() / TimeUnit.SECONDS.toNanos(1);
+    this.cooldownNanos = TimeUnit.MILLISECONDS.toNanos(config.cooldownMillis());
+    this.lastDecreaseNanos = nowNanos - cooldownNanos;
+    this.lastIncreaseNanos = nowNanos;
+  }
+
+  /** Whether the status tells the SMSC is rejecting messages because it is overloaded. */
+  static boolean overloaded(final int commandStatus) {
+    return commandStatus == ESME_RTHROTTLED || commandStatus == ESME_RMSGQFUL;
+  }
+
+  void onResponse(final int commandStatus, final long nowNanos) {
+    if (overloaded(commandStatus)) {
+      lastIncreaseNanos = nowNanos;
+      if (nowNanos - lastDecreaseNanos >= cooldownNanos) {
+        lastDecreaseNanos = nowNanos;
+        bucket.setRate(Math.max(minRate, bucket.rate() * decreaseFactor), nowNanos);
+      }
+    } else if (commandStatus == 0) {
+      final long elapsed = Math.min(nowNanos - lastIncreaseNanos, MAX_INCREASE_INTERVAL_NANOS);
+      lastIncreaseNanos = nowNanos;
+      if (bucket.rate() < maxRate) {
+        bucket.setRate(Math.min(maxRate, bucket.rate() + elapsed * increasePerNano), nowNanos);
+      }
+    }
+  }
+}
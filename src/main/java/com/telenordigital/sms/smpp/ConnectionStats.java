@@ -0,0 +1,79 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exponentially weighted moving averages of the submit_sm response time and error rate of a
+ * connection. Updated on the event loop, read from any thread.
+ */
+class ConnectionStats {
+  // weight of the newest sample, the average follows roughly the last 20 responses
+  private static final double ALPHA = 0.05;
+
+  private volatile double latencyNanos;
+  private volatile double errorRate;
+  private volatile boolean sampled;
+
+  void record(final long latencyNanos, final boolean error) {
+    final double errorSample = error ? 1 : 0;
+    if (!sampled) {
+      this.latencyNanos = latencyNanos;
+      this.errorRate = errorSample;
+      sampled = true;
+    } else {
+      this.latencyNanos += ALPHA * (latencyNanos - this.latencyNanos);
+      this.errorRate += ALPHA * (errorSample - this.errorRate);
+    }
+  }
+
+  /**
+   * Whether a response counts as an error: the SMSC is overloaded, failing or asks for the request
+   * to be sent again.
+   */
+  static boolean isError(final int commandStatus) {
+    return CircuitBreaker.isFailure(commandStatus)
+        || CongestionController.overloaded(commandStatus)
+        || SmppMapping.map(commandStatus)
+            .filter(s -> s.result() == SmppResultCode.RETRIABLE_ERROR)
+            .isPresent();
+  }
+
+  /** Whether there has been a response yet. */
+  boolean sampled() {
+    return sampled;
+  }
+
+  /** The average response time, 0 before the first response. */
+  double latencyNanos() {
+    return latencyNanos;
+  }
+
+  /** The share of requests with an error response or no response at all, 0 to 1. */
+  double errorRate() {
+    return errorRate;
+  }
+
+  SmppConnectionStats snapshot() {
+    return new SmppConnectionStats(latencyNanos / TimeUnit.MILLISECONDS.toNanos(1), errorRate);
+  }
+}
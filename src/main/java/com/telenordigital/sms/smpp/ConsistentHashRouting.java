@@ -0,0 +1,151 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps the MSISDN of a message to a connection through a hash ring with virtual nodes, so
+ * consecutive messages to the same subscriber leave through the same bind, in order.
+ *
+ * <p>The ring is built once over all the connections of the group, active or not. A connection
+ * which is not in the active set or is saturated is skipped by walking the ring to the next owner,
+ * so only the subscribers of that connection move, to the same fallback each time, and they move
+ * back when it recovers. When every connection is saturated the owner still takes the message if it
+ * is active, queued behind its full window.
+ */
+class ConsistentHashRouting implements RoutingStrategy {
+  // enough points per connection to spread the subscribers evenly over a handful of binds
+  static final int VIRTUAL_NODES = 128;
+
+  private final SmppConnection[] connections;
+  // sorted ring positions, and the index of the connection owning each of them
+  private final long[] positions;
+  private final int[] owners;
+
+  ConsistentHashRouting(final List<SmppConnection> connections) {
+    this.connections = connections.toArray(SmppConnection[]::new);
+    final int size = this.connections.length * VIRTUAL_NODES;
+    final long[][] points = new long[size][];
+    for (int i = 0; i < this.connections.length; i++) {
+      for (int v = 0; v < VIRTUAL_NODES; v++) {
+        // the position depends on the connection index only, not on which connections are up
+        points[i * VIRTUAL_NODES + v] = new long[] {mix(((long) i << 32) | v), i};
+      }
+    }
+    Arrays.sort(points, (a, b) -> Long.compare(a[0], b[0]));
+    positions = new long[size];
+    owners = new int[size];
+    for (int p = 0; p < size; p++) {
+      positions[p] = points[p][0];
+      owners[p] = (int) points[p][1];
+    }
+  }
+
+  @Override
+  public SmppConnection select(final SmppSmsMt sms, final SmppConnection[] active) {
+    if (positions.length == 0) {
+      return null;
+    }
+    final int p = position(sms);
+    final int owner = owners[p];
+    if (accepts(connections[owner], active)) {
+      return connections[owner];
+    }
+    // fall back to the next distinct connections on the ring, and when all of them are saturated
+    // to the first usable one, the owner if it is, whose window queue takes the burst
+    SmppConnection usable = usable(connections[owner], active) ? connections[owner] : null;
+    final boolean[] tried = new boolean[connections.length];
+    tried[owner] = true;
+    int remaining = connections.length - 1;
+    for (int step = 1; step < positions.length && remaining > 0; step++) {
+      final int next = owners[(p + step) % positions.length];
+      if (!tried[next]) {
+        tried[next] = true;
+        remaining--;
+        if (accepts(connections[next], active)) {
+          return connections[next];
+        }
+        if (usable == null && usable(connections[next], active)) {
+          usable = connections[next];
+        }
+      }
+    }
+    return usable;
+  }
+
+  @Override
+  public SmppConnection owner(final SmppSmsMt sms) {
+    return positions.length == 0 ? null : connections[owners[position(sms)]];
+  }
+
+  private int position(final SmppSmsMt sms) {
+    int p = Arrays.binarySearch(positions, hash(sms.msisdn()));
+    if (p < 0) {
+      p = -p - 1;
+    }
+    return p == positions.length ? 0 : p;
+  }
+
+  @Override
+  public boolean preservesOrder() {
+    return true;
+  }
+
+  private static boolean accepts(final SmppConnection conn, final SmppConnection[] active) {
+    return usable(conn, active) && conn.getOpenWindowSlots() > 0;
+  }
+
+  private static boolean usable(final SmppConnection conn, final SmppConnection[] active) {
+    return conn.isWritable() && contains(active, conn);
+  }
+
+  private static boolean contains(final SmppConnection[] active, final SmppConnection conn) {
+    for (final var c : active) {
+      if (c == conn) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static long hash(final String msisdn) {
+    if (msisdn == null) {
+      return 0;
+    }
+    // FNV-1a over the bytes, stable across JVMs unlike a seeded hash
+    long h = 0xcbf29ce484222325L;
+    for (final byte b : msisdn.getBytes(StandardCharsets.UTF_8)) {
+      h ^= b & 0xff;
+      h *= 0x100000001b3L;
+    }
+    return mix(h);
+  }
+
+  // the splitmix64 finalizer, spreads close inputs over the whole ring
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,104 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.telenordigital.sms.smpp.config.FlushConfig;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds back flushes until enough writes are pending or the oldest pending write has waited long
+ * enough, so that a burst of single submits goes out in fewer syscalls.
+ */
+class FlushCoalescingHandler extends ChannelDuplexHandler {
+  private final int maxPendingWrites;
+  private final long maxDelayMicros;
+
+  private int pendingWrites;
+  private ScheduledFuture<?> scheduledFlush;
+
+  FlushCoalescingHandler(final FlushConfig config) {
+    this.maxPendingWrites = config.maxPendingWrites();
+    this.maxDelayMicros = config.maxDelayMicros();
+  }
+
+  @Override
+  public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise)
+      throws Exception {
+    pendingWrites++;
+    super.write(ctx, msg, promise);
+  }
+
+  @Override
+  public void flush(final ChannelHandlerContext ctx) {
+    if (pendingWrites >= maxPendingWrites || maxDelayMicros == 0) {
+      flushNow(ctx);
+    } else if (scheduledFlush == null) {
+      scheduledFlush =
+          ctx.executor().schedule(() -> flushNow(ctx), maxDelayMicros, TimeUnit.MICROSECONDS);
+    }
+  }
+
+  @Override
+  public void channelWritabilityChanged(final ChannelHandlerContext ctx) throws Exception {
+    if (!ctx.channel().isWritable()) {
+      flushNow(ctx);
+    }
+    super.channelWritabilityChanged(ctx);
+  }
+
+  @Override
+  public void close(final ChannelHandlerContext ctx, final ChannelPromise promise)
+      throws Exception {
+    flushNow(ctx);
+    super.close(ctx, promise);
+  }
+
+  @Override
+  public void channelInactive(final ChannelHandlerContext ctx) throws Exception {
+    cancelScheduledFlush();
+    super.channelInactive(ctx);
+  }
+
+  @Override
+  public void handlerRemoved(final ChannelHandlerContext ctx) {
+    if (pendingWrites > 0) {
+      ctx.flush();
+    }
+    cancelScheduledFlush();
+  }
+
+  private void flushNow(final ChannelHandlerContext ctx) {
+    cancelScheduledFlush();
+    pendingWrites = 0;
+    ctx.flush();
+  }
+
+  private void cancelScheduledFlush() {
+    if (scheduledFlush != null) {
+      scheduledFlush.cancel(false);
+      scheduledFlush = null;
+    }
+  }
+}
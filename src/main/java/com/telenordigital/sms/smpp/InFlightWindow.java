@@ -0,0 +1,207 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * The requests waiting for a response, keyed by sequence number and kept in insertion order.
+ *
+ * <p>Entries live in preallocated slots linked in insertion order, and an open-addressing table
+ * maps sequence numbers to slots, so adding and removing requests does not allocate. It is modified
+ * only on the event loop, {@link #size()} may be read from any thread.
+ */
+class InFlightWindow<V> {
+  private static final int NONE = -1;
+
+  private final int capacity;
+  // slot + 1 for every sequence number in the window, 0 for an empty bucket
+  private final int[] table;
+  private final int mask;
+  private final int shift;
+
+  private final int[] sequenceNumbers;
+  private final Object[] values;
+  // System.nanoTime() when the entry was added
+  private final long[] addedNanos;
+  private final int[] previous;
+  private final int[] next;
+  private final int[] freeSlots;
+  private int freeCount;
+  private int head = NONE;
+  private int tail = NONE;
+
+  private volatile int size;
+
+  InFlightWindow(final int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Window size must be > 0");
+    }
+    this.capacity = capacity;
+    // keep the load factor at or below 0.5
+    this.table = new int[Integer.highestOneBit(capacity) << 2];
+    this.mask = table.length - 1;
+    this.shift = Integer.numberOfLeadingZeros(mask);
+    this.sequenceNumbers = new int[capacity];
+    this.values = new Object[capacity];
+    this.addedNanos = new long[capacity];
+    this.previous = new int[capacity];
+    this.next = new int[capacity];
+    this.freeSlots = new int[capacity];
+    for (int i = 0; i < capacity; i++) {
+      freeSlots[i] = capacity - 1 - i;
+    }
+    this.freeCount = capacity;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  boolean isFull() {
+    return size == capacity;
+  }
+
+  /**
+   * Adds the value as the newest entry. An entry with the same sequence number is kept, its request
+   * would otherwise never be completed or expired.
+   *
+   * @return false if the window is full or already has the sequence number
+   */
+  boolean put(final int sequenceNumber, final V value, final long nowNanos) {
+    int bucket = bucket(sequenceNumber);
+    while (table[bucket] != 0) {
+      final int slot = table[bucket] - 1;
+      if (sequenceNumbers[slot] == sequenceNumber) {
+        return false;
+      }
+      bucket = (bucket + 1) & mask;
+    }
+    if (freeCount == 0) {
+      return false;
+    }
+
+    final int slot = freeSlots[--freeCount];
+    sequenceNumbers[slot] = sequenceNumber;
+    values[slot] = value;
+    addedNanos[slot] = nowNanos;
+    previous[slot] = tail;
+    next[slot] = NONE;
+    if (tail == NONE) {
+      head = slot;
+    } else {
+      next[tail] = slot;
+    }
+    tail = slot;
+    table[bucket] = slot + 1;
+    size = capacity - freeCount;
+    return true;
+  }
+
+  /** Removes the entry with the sequence number, returning its value or null if not present. */
+  V remove(final int sequenceNumber) {
+    final int bucket = find(sequenceNumber);
+    if (bucket < 0) {
+      return null;
+    }
+    final int slot = table[bucket] - 1;
+    deleteBucket(bucket);
+    return release(slot);
+  }
+
+  /** When the entry with the sequence number was added, or -1 if not present. */
+  long addedNanos(final int sequenceNumber) {
+    final int bucket = find(sequenceNumber);
+    return bucket < 0 ? -1 : addedNanos[table[bucket] - 1];
+  }
+
+  /** When the oldest entry was added. Only valid if the window is not empty. */
+  long oldestAddedNanos() {
+    return addedNanos[head];
+  }
+
+  private int find(final int sequenceNumber) {
+    int bucket = bucket(sequenceNumber);
+    while (table[bucket] != 0) {
+      if (sequenceNumbers[table[bucket] - 1] == sequenceNumber) {
+        return bucket;
+      }
+      bucket = (bucket + 1) & mask;
+    }
+    return -1;
+  }
+
+  /** The value of the oldest entry, or null if the window is empty. */
+  @SuppressWarnings("unchecked")
+  V oldest() {
+    return head == NONE ? null : (V) values[head];
+  }
+
+  /** Removes the oldest entry, returning its value or null if the window is empty. */
+  V removeOldest() {
+    return head == NONE ? null : remove(sequenceNumbers[head]);
+  }
+
+  private int bucket(final int sequenceNumber) {
+    // sequence numbers are often consecutive, spread them over the table
+    return (sequenceNumber * 0x9E3779B9) >>> shift;
+  }
+
+  /** Empties the bucket, moving later entries of the probe sequence back into the gap. */
+  private void deleteBucket(final int bucket) {
+    int gap = bucket;
+    int current = bucket;
+    while (true) {
+      current = (current + 1) & mask;
+      if (table[current] == 0) {
+        break;
+      }
+      final int home = bucket(sequenceNumbers[table[current] - 1]);
+      // move the entry unless its home bucket lies cyclically in (gap, current]
+      if (((current - home) & mask) >= ((current - gap) & mask)) {
+        table[gap] = table[current];
+        gap = current;
+      }
+    }
+    table[gap] = 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  private V release(final int slot) {
+    final var value = (V) values[slot];
+    values[slot] = null;
+    if (previous[slot] == NONE) {
+      head = next[slot];
+    } else {
+      next[previous[slot]] = next[slot];
+    }
+    if (next[slot] == NONE) {
+      tail = previous[slot];
+    } else {
+      previous[next[slot]] = previous[slot];
+    }
+    freeSlots[freeCount++] = slot;
+    size = capacity - freeCount;
+    return value;
+  }
+}
@@ -34,6 +34,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -98,9 +99,7 @@ class InboundPduHandler extends MessageToMessageDecoder<RequestPdu<?>> {
                           deliverSm.srcSubAddress()))
               .map(
                   dr ->
-                      parent
-                          .drHandler
-                          .apply(dr)
+                      invokeHandler(parent.drHandler, dr)
                           .orTimeout(parent.config.handlerTimeoutSeconds(), TimeUnit.SECONDS)
                           .thenApply(i -> handleSuccess(ctx, deliverSm))
                           .exceptionally(e -> handleException(e, ctx, deliverSm)))
@@ -120,9 +119,7 @@ class InboundPduHandler extends MessageToMessageDecoder<RequestPdu<?>> {
               deliverSm.part(),
               deliverSm.numberOfParts());
       future =
-          parent
-              .moHandler
-              .apply(mo)
+          invokeHandler(parent.moHandler, mo)
               .orTimeout(parent.config.handlerTimeoutSeconds(), TimeUnit.SECONDS)
               .thenApply(ignore -> handleSuccess(ctx, deliverSm))
               .exceptionally(e -> handleException(e, ctx, deliverSm));
@@ -135,6 +132,16 @@ class InboundPduHandler extends MessageToMessageDecoder<RequestPdu<?>> {
     }
   }
 
+  private <T> CompletableFuture<Void> invokeHandler(
+      final Function<T, CompletableFuture<Void>> handler, final T value) {
+    if (parent.handlerExecutor == null) {
+      return handler.apply(value);
+    }
+    // keep the event loop free, the response is written back to the channel from the executor
+    return CompletableFuture.supplyAsync(() -> handler.apply(value), parent.handlerExecutor)
+        .thenCompose(Function.identity());
+  }
+
   private ChannelFuture handleSuccess(final ChannelHandlerContext ctx, final DeliverSm deliverSm) {
     LOG.debug("Handle success: {}", deliverSm);
     return ctx.writeAndFlush(deliverSm.createResponse())
@@ -0,0 +1,85 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks the better of two random connections by expected completion time: the average response
+ * time, scaled by the requests already waiting on the connection and by the share of requests that
+ * fail and have to be sent again. A slow or failing SMSC node gets less traffic, while still
+ * getting enough to notice when it recovers. A connection without a response yet has no response
+ * time to compare, so it is compared by open window slots, as with power of two choices.
+ */
+class LatencyWeightedRouting implements RoutingStrategy {
+  // the error rate is capped, so a failing connection is costly but not infinitely so
+  private static final double MAX_ERROR_RATE = 0.99;
+
+  @Override
+  public SmppConnection select(final SmppSmsMt sms, final SmppConnection[] active) {
+    final int n = active.length;
+    if (n == 1) {
+      return active[0].isWritable() ? active[0] : null;
+    }
+    final var random = ThreadLocalRandom.current();
+    final int i = random.nextInt(n);
+    final int j = (i + 1 + random.nextInt(n - 1)) % n;
+    final var first = active[i];
+    final var second = active[j];
+
+    if (available(first) && available(second)) {
+      return better(first, second);
+    } else if (available(first)) {
+      return first;
+    } else if (available(second)) {
+      return second;
+    }
+    for (final var conn : active) {
+      if (available(conn)) {
+        return conn;
+      }
+    }
+    // every window is full, the connection decides whether the request waits or fails
+    for (final var conn : active) {
+      if (conn.isWritable()) {
+        return conn;
+      }
+    }
+    return null;
+  }
+
+  private static boolean available(final SmppConnection conn) {
+    return conn.isWritable() && conn.getOpenWindowSlots() > 0;
+  }
+
+  private static SmppConnection better(final SmppConnection first, final SmppConnection second) {
+    if (!first.getStats().sampled() || !second.getStats().sampled()) {
+      return first.getOpenWindowSlots() >= second.getOpenWindowSlots() ? first : second;
+    }
+    return cost(first) <= cost(second) ? first : second;
+  }
+
+  static double cost(final SmppConnection conn) {
+    final var stats = conn.getStats();
+    final double errorRate = Math.min(stats.errorRate(), MAX_ERROR_RATE);
+    return stats.latencyNanos() * (conn.getInFlight() + 1) / (1 - errorRate);
+  }
+}
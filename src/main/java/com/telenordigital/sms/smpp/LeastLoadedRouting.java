@@ -0,0 +1,41 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/** Picks the writable connection with the most open window slots. */
+class LeastLoadedRouting implements RoutingStrategy {
+
+  @Override
+  public SmppConnection select(final SmppSmsMt sms, final SmppConnection[] active) {
+    SmppConnection selected = null;
+    int selectedSlots = Integer.MIN_VALUE;
+    for (final var conn : active) {
+      if (conn.isWritable()) {
+        final int slots = conn.getOpenWindowSlots();
+        if (slots > selectedSlots) {
+          selected = conn;
+          selectedSlots = slots;
+        }
+      }
+    }
+    return selected;
+  }
+}
@@ -0,0 +1,53 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.telenordigital.sms.smpp.pdu.Command;
+import com.telenordigital.sms.smpp.pdu.SubmitSmResp;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * The parts of a concatenated message. They are admitted into the window together, or not at all,
+ * so a full window never sends only some of the parts.
+ */
+record MultipartRequest(List<RequestResponse<SubmitSmResp>> parts, long startedNanos)
+    implements OutboundRequest {
+
+  MultipartRequest(final List<RequestResponse<SubmitSmResp>> parts) {
+    this(parts, System.nanoTime());
+  }
+
+  @Override
+  public int pduCount() {
+    return parts.size();
+  }
+
+  @Override
+  public Command command() {
+    return Command.SUBMIT_SM;
+  }
+
+  @Override
+  public void fail(final Executor executor, final SmppException e) {
+    parts.forEach(p -> p.completeExceptionally(executor, e));
+  }
+}
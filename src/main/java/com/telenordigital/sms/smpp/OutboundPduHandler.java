@@ -20,98 +20,408 @@ package com.telenordigital.sms.smpp;
  * #L%
  */
 
+import com.telenordigital.sms.smpp.config.AdaptiveWindowConfig;
+import com.telenordigital.sms.smpp.config.ResponseCompletion;
+import com.telenordigital.sms.smpp.config.ThrottleConfig;
+import com.telenordigital.sms.smpp.config.WindowQueueConfig;
+import com.telenordigital.sms.smpp.pdu.Command;
 import com.telenordigital.sms.smpp.pdu.ResponsePdu;
+import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToMessageCodec;
+import io.netty.channel.ChannelPromise;
 import java.lang.invoke.MethodHandles;
-import java.util.LinkedHashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-class OutboundPduHandler extends MessageToMessageCodec<ResponsePdu, RequestResponse<ResponsePdu>> {
+class OutboundPduHandler extends ChannelDuplexHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   private final int windowSize;
   private final int timeoutSeconds;
+  private final long timeoutNanos;
+  private final ResponseCompletion completion;
+  private final Executor handlerExecutor;
+  private final int maxQueueDepth;
+  private final long maxQueueWaitNanos;
+  // limits the submit_sm rate, null if not throttled
+  private final TokenBucket throttle;
+  // adjusts the throttle rate from the responses, null if the rate is fixed
+  private final CongestionController congestion;
+  // sizes the window from the response times, null if the window size is fixed
+  private final AdaptiveWindowLimit adaptiveLimit;
+  private final ConnectionStats stats;
+  // null if the connection has no circuit breaker
+  private final CircuitBreaker breaker;
 
-  private final Map<Integer, RequestResponse<ResponsePdu>> window = new LinkedHashMap<>();
+  private final InFlightWindow<RequestResponse<ResponsePdu>> window;
+  // requests waiting for a window slot, and the promises of their writes
+  private final ArrayDeque<OutboundRequest> queue = new ArrayDeque<>();
+  private final ArrayDeque<ChannelPromise> queuedPromises = new ArrayDeque<>();
   private CompletableFuture<Void> drainingFuture;
+  private ScheduledFuture<?> expiryTimer;
+  private ScheduledFuture<?> queueTimer;
+  private ScheduledFuture<?> throttleTimer;
+  // fires when the window has waited too long for any response, only with a circuit breaker
+  private ScheduledFuture<?> stallTimer;
+  private long lastResponseNanos;
 
-  OutboundPduHandler(final int windowSize, final int timeoutSeconds) {
+  OutboundPduHandler(
+      final int windowSize,
+      final int timeoutSeconds,
+      final ResponseCompletion completion,
+      final Executor handlerExecutor,
+      final WindowQueueConfig queueConfig,
+      final ThrottleConfig throttleConfig,
+      final AdaptiveWindowConfig adaptiveConfig,
+      final ConnectionStats stats,
+      final CircuitBreaker breaker) {
     if (windowSize < 1) {
       throw new IllegalArgumentException("Window size must be > 0");
     }
 
     this.windowSize = windowSize;
+    this.adaptiveLimit =
+        adaptiveConfig == null ? null : new AdaptiveWindowLimit(adaptiveConfig, windowSize);
+    this.window =
+        new InFlightWindow<>(adaptiveConfig == null ? windowSize : adaptiveConfig.maxWindowSize());
     this.timeoutSeconds = timeoutSeconds;
+    this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+    this.completion = completion;
+    this.handlerExecutor = handlerExecutor;
+    this.stats = stats;
+    this.breaker = breaker;
+    this.lastResponseNanos = System.nanoTime();
+    this.maxQueueDepth = queueConfig == null ? 0 : queueConfig.maxDepth();
+    this.maxQueueWaitNanos =
+        queueConfig == null ? 0 : TimeUnit.MILLISECONDS.toNanos(queueConfig.maxWaitMillis());
+    final long now = System.nanoTime();
+    this.throttle =
+        throttleConfig == null
+            ? null
+            : new TokenBucket(throttleConfig.maxSubmitsPerSecond(), throttleConfig.burst(), now);
+    this.congestion =
+        throttleConfig == null || throttleConfig.congestion() == null
+            ? null
+            : new CongestionController(
+                throttle, throttleConfig.maxSubmitsPerSecond(), throttleConfig.congestion(), now);
   }
 
-  private void removeExpired(final ChannelHandlerContext ctx) {
-    window
-        .entrySet()
-        .removeIf(
-            entry -> {
-              final var rr = entry.getValue();
-              final var age = System.currentTimeMillis() - rr.startedTimeMillis();
+  /** The executor to complete the response futures on, null completes them inline. */
+  private Executor completionExecutor(final ChannelHandlerContext ctx) {
+    return switch (completion) {
+      case EVENT_LOOP -> ctx.executor();
+      case INLINE -> null;
+      case HANDLER_EXECUTOR -> handlerExecutor != null ? handlerExecutor : ctx.executor();
+    };
+  }
+
+  /**
+   * Arms the expiry timer for the oldest request. All requests share the same timeout, so the
+   * window is in deadline order and a single timer is enough.
+   */
+  private void scheduleExpiry(final ChannelHandlerContext ctx) {
+    if (expiryTimer != null || window.isEmpty()) {
+      return;
+    }
+    final long delay = window.oldestAddedNanos() + timeoutNanos - System.nanoTime();
+    expiryTimer = ctx.executor().schedule(() -> expire(ctx), delay, TimeUnit.NANOSECONDS);
+  }
+
+  private void expire(final ChannelHandlerContext ctx) {
+    expiryTimer = null;
+    final long now = System.nanoTime();
+    // futures may be completed inline, complete them after iterating as callbacks can submit
+    List<RequestResponse<ResponsePdu>> expired = null;
+    RequestResponse<ResponsePdu> rr;
+    long elapsed;
+    while (!window.isEmpty() && (elapsed = now - window.oldestAddedNanos()) >= timeoutNanos) {
+      rr = window.removeOldest();
+      LOG.warn("Entry expired: {}", rr);
+      if (rr.request().command() == Command.SUBMIT_SM) {
+        stats.record(elapsed, true);
+        if (breaker != null) {
+          breaker.onFailure();
+        }
+      }
+      if (expired == null) {
+        expired = new ArrayList<>();
+      }
+      expired.add(rr);
+    }
+
+    if (expired != null) {
+      final var executor = completionExecutor(ctx);
+      expired.forEach(
+          e ->
+              e.completeExceptionally(
+                  executor, "Request expired. No response received in " + timeoutSeconds + "s"));
+      releaseQueued(ctx);
+      completeDraining();
+    }
+    scheduleExpiry(ctx);
+  }
 
-              if (age > timeoutSeconds * 1_000L) {
-                LOG.warn("Entry expired: {}", entry);
-                rr.completeExceptionally(
-                    ctx, "Request expired. No response received in " + timeoutSeconds + "s");
-                return true;
-              }
+  /** Checks that the SMSC still answers while requests are outstanding. */
+  private void scheduleStallCheck(final ChannelHandlerContext ctx) {
+    if (breaker == null || stallTimer != null || window.isEmpty()) {
+      return;
+    }
+    final long waitingSince = Math.max(window.oldestAddedNanos(), lastResponseNanos);
+    final long delay = waitingSince + breaker.stallNanos() - System.nanoTime();
+    stallTimer = ctx.executor().schedule(() -> checkStall(ctx), delay, TimeUnit.NANOSECONDS);
+  }
 
-              return false;
-            });
+  private void checkStall(final ChannelHandlerContext ctx) {
+    stallTimer = null;
+    if (window.isEmpty()) {
+      return;
+    }
+    final long now = System.nanoTime();
+    if (now - Math.max(window.oldestAddedNanos(), lastResponseNanos) >= breaker.stallNanos()) {
+      LOG.warn(
+          "No response in {}ms with {} requests outstanding",
+          TimeUnit.NANOSECONDS.toMillis(breaker.stallNanos()),
+          window.size());
+      breaker.trip();
+      // checked again after another stall period
+      lastResponseNanos = now;
+    }
+    scheduleStallCheck(ctx);
+  }
+
+  private void cancelExpiry() {
+    if (expiryTimer != null) {
+      expiryTimer.cancel(false);
+      expiryTimer = null;
+    }
+  }
+
+  private int windowLimit() {
+    return adaptiveLimit == null ? windowSize : adaptiveLimit.limit();
+  }
+
+  private boolean windowFull() {
+    return window.size() >= windowLimit();
+  }
+
+  int getInFlight() {
+    return window.size();
   }
 
   int getOpenWindowSlots() {
-    // this method will be called on a different thread. it is used only for monitoring purpose
-    return windowSize - window.size();
+    // called from other threads, the window size is safe to read from any thread
+    return Math.max(0, windowLimit() - window.size());
+  }
+
+  /** The submit_sm per second currently admitted, infinite if not throttled. */
+  double getSubmitRate() {
+    return throttle == null ? Double.POSITIVE_INFINITY : throttle.rate();
   }
 
   @Override
-  protected void encode(
-      final ChannelHandlerContext ctx,
-      final RequestResponse<ResponsePdu> msg,
-      final List<Object> out) {
-    removeExpired(ctx);
+  public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise)
+      throws Exception {
+    if (!(msg instanceof OutboundRequest request)) {
+      super.write(ctx, msg, promise);
+      return;
+    }
+    if (breaker != null
+        && request.command() == Command.SUBMIT_SM
+        && !breaker.tryAcquire(System.nanoTime())) {
+      promise.trySuccess();
+      request.fail(completionExecutor(ctx), "Circuit breaker is " + breaker.state());
+      return;
+    }
 
-    final var request = msg.request();
-    if (window.size() >= windowSize) {
+    // queued requests go first, so a single part submit_sm never takes the slots a queued
+    // multipart message waits for. other PDUs than submit_sm are not throttled and need only a
+    // window slot
+    if (fits(request)
+        && (request.command() != Command.SUBMIT_SM || queue.isEmpty())
+        && (!throttled(request) || acquire(request))) {
+      admit(ctx, request, promise);
+    } else if (request.pduCount() > windowLimit()) {
+      LOG.warn("Request needs {} window slots, more than the window size", request.pduCount());
+      promise.trySuccess();
+      request.fail(completionExecutor(ctx), "Window is full");
+    } else if (queue.size() < maxQueueDepth) {
+      LOG.debug("Window is full or throttled, queueing: {}. Queue size: {}", request, queue.size());
+      queue.addLast(request);
+      queuedPromises.addLast(promise);
+      scheduleQueueExpiry(ctx);
+      scheduleThrottleRelease(ctx);
+    } else if (!fits(request) || !throttled(request)) {
       LOG.warn("Window is full. Size: {}", window.size());
-      msg.completeExceptionally(ctx, "Window is full");
+      promise.trySuccess();
+      request.fail(completionExecutor(ctx), new SmppWindowFullException("Window is full"));
+    } else {
+      LOG.warn("Submit rate exceeded. Queue size: {}", queue.size());
+      promise.trySuccess();
+      request.fail(completionExecutor(ctx), "Submit rate exceeded");
+    }
+  }
+
+  /** Whether all the PDUs of the request fit into the window. */
+  private boolean fits(final OutboundRequest request) {
+    return window.size() + request.pduCount() <= windowLimit();
+  }
+
+  private boolean acquire(final OutboundRequest request) {
+    return throttle.tryAcquire(System.nanoTime(), request.pduCount());
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private void admit(
+      final ChannelHandlerContext ctx,
+      final OutboundRequest request,
+      final ChannelPromise promise) {
+    if (request instanceof MultipartRequest multipart) {
+      final var parts = multipart.parts();
+      for (int i = 0; i < parts.size(); i++) {
+        final var part = (RequestResponse) parts.get(i);
+        admit(ctx, part, i == parts.size() - 1 ? promise : ctx.newPromise());
+      }
     } else {
-      window.put(request.sequenceNumber(), msg);
-      LOG.debug("Sending request: {}. Window size: {}", msg, window.size());
-      out.add(request);
+      admit(ctx, (RequestResponse<ResponsePdu>) request, promise);
+    }
+  }
+
+  private void admit(
+      final ChannelHandlerContext ctx,
+      final RequestResponse<ResponsePdu> rr,
+      final ChannelPromise promise) {
+    if (!window.put(rr.request().sequenceNumber(), rr, System.nanoTime())) {
+      LOG.warn("No window slot for sequence number {}", rr.request().sequenceNumber());
+      promise.trySuccess();
+      rr.fail(completionExecutor(ctx), "Window is full");
+      return;
+    }
+    scheduleExpiry(ctx);
+    scheduleStallCheck(ctx);
+    LOG.debug("Sending request: {}. Window size: {}", rr, window.size());
+    ctx.write(rr.request(), promise);
+  }
+
+  private boolean throttled(final OutboundRequest request) {
+    return throttle != null && request.command() == Command.SUBMIT_SM;
+  }
+
+  /** Moves queued requests into the free window slots, as far as the throttle allows. */
+  private void releaseQueued(final ChannelHandlerContext ctx) {
+    boolean admitted = false;
+    while (!queue.isEmpty() && fits(queue.peekFirst())) {
+      if (throttled(queue.peekFirst()) && !acquire(queue.peekFirst())) {
+        scheduleThrottleRelease(ctx);
+        break;
+      }
+      admit(ctx, queue.pollFirst(), queuedPromises.pollFirst());
+      admitted = true;
+    }
+    if (admitted) {
+      ctx.flush();
+    }
+  }
+
+  /** Releases the head of the queue when the throttle has a token for it. */
+  private void scheduleThrottleRelease(final ChannelHandlerContext ctx) {
+    if (throttleTimer != null || queue.isEmpty() || !throttled(queue.peekFirst())) {
+      return;
+    }
+    final long delay = throttle.nanosUntilAvailable(System.nanoTime());
+    throttleTimer =
+        ctx.executor()
+            .schedule(
+                () -> {
+                  throttleTimer = null;
+                  releaseQueued(ctx);
+                },
+                delay,
+                TimeUnit.NANOSECONDS);
+  }
+
+  private void scheduleQueueExpiry(final ChannelHandlerContext ctx) {
+    if (queueTimer != null || queue.isEmpty()) {
+      return;
     }
+    final long delay = queue.peekFirst().startedNanos() + maxQueueWaitNanos - System.nanoTime();
+    queueTimer = ctx.executor().schedule(() -> expireQueued(ctx), delay, TimeUnit.NANOSECONDS);
+  }
+
+  private void expireQueued(final ChannelHandlerContext ctx) {
+    queueTimer = null;
+    final long now = System.nanoTime();
+    List<OutboundRequest> expired = null;
+    while (!queue.isEmpty() && now - queue.peekFirst().startedNanos() >= maxQueueWaitNanos) {
+      queuedPromises.pollFirst().trySuccess();
+      if (expired == null) {
+        expired = new ArrayList<>();
+      }
+      expired.add(queue.pollFirst());
+    }
+
+    if (expired != null) {
+      LOG.warn("{} requests did not get a window slot in time", expired.size());
+      final var executor = completionExecutor(ctx);
+      final var message =
+          "Window is full. No slot within "
+              + TimeUnit.NANOSECONDS.toMillis(maxQueueWaitNanos)
+              + "ms";
+      expired.forEach(e -> e.fail(executor, message));
+      completeDraining();
+    }
+    scheduleQueueExpiry(ctx);
   }
 
   @Override
-  protected void decode(
-      final ChannelHandlerContext ctx, final ResponsePdu msg, final List<Object> out) {
-    final var rr = window.remove(msg.sequenceNumber());
+  public void channelRead(final ChannelHandlerContext ctx, final Object msg) throws Exception {
+    if (!(msg instanceof ResponsePdu response)) {
+      super.channelRead(ctx, msg);
+      return;
+    }
+
+    final long now = System.nanoTime();
+    lastResponseNanos = now;
+    final long sentNanos = window.addedNanos(response.sequenceNumber());
+    final var rr = window.remove(response.sequenceNumber());
     if (rr == null) {
       LOG.warn("Unknown response PDU: {}", msg);
       return;
     }
 
-    rr.complete(ctx, msg);
-    out.add(msg);
+    if (rr.request().command() == Command.SUBMIT_SM) {
+      stats.record(now - sentNanos, ConnectionStats.isError(response.commandStatus()));
+      if (breaker != null) {
+        breaker.onResponse(response.commandStatus());
+      }
+      if (congestion != null) {
+        congestion.onResponse(response.commandStatus(), now);
+      }
+      if (adaptiveLimit != null && response.commandStatus() == 0) {
+        adaptiveLimit.onSample(now - sentNanos, window.size() + 1);
+      }
+    }
+    rr.complete(completionExecutor(ctx), response);
+    releaseQueued(ctx);
+    super.channelRead(ctx, msg);
 
     if (drainingFuture != null) {
       LOG.debug("Receiving response in DRAINING mode. Window size: {}", window.size());
-      if (window.size() == 0) {
-        drainingFuture.complete(null);
-      }
+      completeDraining();
     }
+  }
 
-    removeExpired(ctx);
+  private void completeDraining() {
+    if (drainingFuture != null && window.isEmpty() && queue.isEmpty()) {
+      drainingFuture.complete(null);
+    }
   }
 
   @Override
@@ -119,7 +429,7 @@ class OutboundPduHandler extends MessageToMessageCodec<ResponsePdu, RequestRespo
       throws Exception {
     if (evt instanceof SmppDrainEvent event && event.type() == SmppState.DRAINING_OUTBOUND) {
       LOG.debug("Receiving draining state change. Window size: {}", window.size());
-      if (window.size() == 0) {
+      if (window.isEmpty() && queue.isEmpty()) {
         event.future().complete(null);
         drainingFuture = null;
       } else {
@@ -132,7 +442,30 @@ class OutboundPduHandler extends MessageToMessageCodec<ResponsePdu, RequestRespo
 
   @Override
   public void channelUnregistered(final ChannelHandlerContext ctx) throws Exception {
-    window.forEach((i, rr) -> rr.completeExceptionally(ctx, "Connection lost"));
+    cancelExpiry();
+    if (stallTimer != null) {
+      stallTimer.cancel(false);
+      stallTimer = null;
+    }
+    if (queueTimer != null) {
+      queueTimer.cancel(false);
+      queueTimer = null;
+    }
+    if (throttleTimer != null) {
+      throttleTimer.cancel(false);
+      throttleTimer = null;
+    }
+    final var executor = completionExecutor(ctx);
+    final List<OutboundRequest> lost = new ArrayList<>(window.size() + queue.size());
+    RequestResponse<ResponsePdu> rr;
+    while ((rr = window.removeOldest()) != null) {
+      lost.add(rr);
+    }
+    while (!queue.isEmpty()) {
+      queuedPromises.pollFirst().trySuccess();
+      lost.add(queue.pollFirst());
+    }
+    lost.forEach(r -> r.fail(executor, "Connection lost"));
     super.channelUnregistered(ctx);
   }
 }
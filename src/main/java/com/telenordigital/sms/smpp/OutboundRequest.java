@@ -0,0 +1,42 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.telenordigital.sms.smpp.pdu.Command;
+import java.util.concurrent.Executor;
+
+/** A request written to {@link OutboundPduHandler}, taking one or more window slots. */
+interface OutboundRequest {
+
+  /** The number of PDUs, and so of window slots, the request takes. */
+  int pduCount();
+
+  Command command();
+
+  long startedNanos();
+
+  /** Fails the response futures of all PDUs, on the executor or inline if it is null. */
+  void fail(Executor executor, SmppException e);
+
+  default void fail(final Executor executor, final String message) {
+    fail(executor, new SmppException(message));
+  }
+}
@@ -0,0 +1,75 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * Captures a sample of the SMPP frames going through the pipeline. A request and its response share
+ * the sequence number, so they are sampled together.
+ */
+class PduCaptureHandler extends ChannelDuplexHandler {
+  // offset of the sequence number in a frame without the command length
+  private static final int SEQUENCE_NUMBER_OFFSET = 8;
+
+  private final PduCaptureWriter writer;
+  private final long threshold;
+
+  PduCaptureHandler(final PduCaptureWriter writer, final double sampleRate) {
+    this.writer = writer;
+    this.threshold = (long) (sampleRate * (1L << 32));
+  }
+
+  @Override
+  public void channelRead(final ChannelHandlerContext ctx, final Object msg) throws Exception {
+    capture(msg, true);
+    super.channelRead(ctx, msg);
+  }
+
+  @Override
+  public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise)
+      throws Exception {
+    capture(msg, false);
+    super.write(ctx, msg, promise);
+  }
+
+  @Override
+  public void channelInactive(final ChannelHandlerContext ctx) throws Exception {
+    writer.flush();
+    super.channelInactive(ctx);
+  }
+
+  private void capture(final Object msg, final boolean inbound) {
+    if (msg instanceof ByteBuf frame
+        && frame.readableBytes() >= SEQUENCE_NUMBER_OFFSET + 4
+        && sampled(frame.getInt(frame.readerIndex() + SEQUENCE_NUMBER_OFFSET))) {
+      writer.write(System.currentTimeMillis(), inbound, frame);
+    }
+  }
+
+  boolean sampled(final int sequenceNumber) {
+    // spread consecutive sequence numbers evenly over the int range
+    return Integer.toUnsignedLong(sequenceNumber * 0x9E3779B9) < threshold;
+  }
+}
@@ -0,0 +1,106 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.telenordigital.sms.smpp.config.DefaultEncoding;
+import com.telenordigital.sms.smpp.pdu.Command;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads back the files written by a connection with a {@link
+ * com.telenordigital.sms.smpp.config.CaptureConfig}. Run it with the capture files as arguments to
+ * print the captured PDUs.
+ */
+public final class PduCaptureReader {
+  private PduCaptureReader() {}
+
+  public record CapturedPdu(
+      Instant timestamp, boolean inbound, int sequenceNumber, String pdu, String hexDump) {
+    @Override
+    public String toString() {
+      return String.format("%s %s %s", timestamp, inbound ? "<-" : "->", pdu);
+    }
+  }
+
+  public static List<CapturedPdu> read(final Path file, final Charset defaultCharset)
+      throws IOException {
+    final var decoder = new PduDecoder(defaultCharset);
+    final List<CapturedPdu> pdus = new ArrayList<>();
+    try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != PduCaptureWriter.MAGIC) {
+        throw new IOException("Not a PDU capture file: " + file);
+      }
+      while (true) {
+        final long timeMillis;
+        try {
+          timeMillis = in.readLong();
+        } catch (final EOFException e) {
+          return pdus;
+        }
+        final boolean inbound = in.readByte() == 1;
+        final var frame = new byte[in.readInt()];
+        in.readFully(frame);
+        pdus.add(
+            new CapturedPdu(
+                Instant.ofEpochMilli(timeMillis),
+                inbound,
+                Unpooled.wrappedBuffer(frame).getInt(8),
+                decode(decoder, frame),
+                ByteBufUtil.hexDump(frame)));
+      }
+    }
+  }
+
+  private static String decode(final PduDecoder decoder, final byte[] frame) {
+    final List<Object> out = new ArrayList<>(1);
+    try {
+      decoder.decode(null, Unpooled.wrappedBuffer(frame), out);
+    } catch (final RuntimeException e) {
+      // the decoder only handles the PDUs a client receives
+    }
+    if (!out.isEmpty()) {
+      return out.get(0).toString();
+    }
+    final int id = Unpooled.wrappedBuffer(frame).getInt(0);
+    return Command.valueOf(id).map(Enum::name).orElse("0x" + Integer.toHexString(id))
+        + " "
+        + ByteBufUtil.hexDump(frame);
+  }
+
+  public static void main(final String[] args) throws IOException {
+    for (final var file : args) {
+      for (final var pdu : read(Path.of(file), DefaultEncoding.LATIN1.charset)) {
+        System.out.println(pdu);
+      }
+    }
+  }
+}
@@ -0,0 +1,216 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes captured frames to size-bounded files, keeping at most a fixed number of files.
+ *
+ * <p>A file starts with {@link #MAGIC} followed by records of: capture time in epoch millis (long),
+ * direction (byte, 1 for inbound), frame length (int) and the frame without the command length.
+ * Writes are buffered and reach the disk when the buffer fills, the channel goes inactive or the
+ * file is rotated.
+ *
+ * <p>The frames are copied into a bounded queue and written by a background thread, so the event
+ * loop never waits for the disk. Frames are dropped while the queue is full.
+ */
+class PduCaptureWriter implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  static final int MAGIC = 0x534d5043; // "SMPC"
+  static final String SUFFIX = ".smppcap";
+  private static final int RECORD_HEADER_BYTES = 8 + 1 + 4;
+  private static final int QUEUE_CAPACITY = 4096;
+  private static final AtomicInteger ids = new AtomicInteger();
+
+  private record Frame(long timeMillis, boolean inbound, byte[] bytes) {}
+
+  private static final Frame FLUSH = new Frame(0, false, null);
+  private static final Frame CLOSE = new Frame(0, false, null);
+
+  private final Path directory;
+  private final String prefix;
+  private final long maxFileBytes;
+  private final int maxFiles;
+  private final BlockingQueue<Frame> queue;
+  private final AtomicLong dropped = new AtomicLong();
+  private final Thread thread;
+  private volatile boolean disabled;
+
+  // only used by the writer thread
+  private final Deque<Path> files = new ArrayDeque<>();
+  private DataOutputStream out;
+  private long fileBytes;
+  private int fileIndex;
+
+  PduCaptureWriter(
+      final Path directory, final String name, final long maxFileBytes, final int maxFiles) {
+    this(directory, name, maxFileBytes, maxFiles, QUEUE_CAPACITY);
+  }
+
+  PduCaptureWriter(
+      final Path directory,
+      final String name,
+      final long maxFileBytes,
+      final int maxFiles,
+      final int queueCapacity) {
+    this.directory = directory;
+    this.prefix =
+        String.format("%s-%d-%d", name, ProcessHandle.current().pid(), ids.incrementAndGet());
+    this.maxFileBytes = maxFileBytes;
+    this.maxFiles = maxFiles;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    try {
+      Files.createDirectories(directory);
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    thread = new Thread(this::run, "smpp-capture-" + prefix);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  void write(final long timeMillis, final boolean inbound, final ByteBuf frame) {
+    if (disabled) {
+      return;
+    }
+    if (!queue.offer(new Frame(timeMillis, inbound, ByteBufUtil.getBytes(frame)))
+        && dropped.getAndIncrement() == 0) {
+      LOG.warn("PDU capture cannot keep up, dropping frames");
+    }
+  }
+
+  void flush() {
+    // a flush is dropped like a frame, the next one catches up
+    queue.offer(FLUSH);
+  }
+
+  /** The number of frames dropped because the queue was full. */
+  long dropped() {
+    return dropped.get();
+  }
+
+  private void run() {
+    try {
+      for (var frame = queue.take(); frame != CLOSE; frame = queue.take()) {
+        if (frame == FLUSH) {
+          flushQuietly();
+        } else if (!disabled) {
+          append(frame);
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      closeQuietly();
+    }
+  }
+
+  private void append(final Frame frame) {
+    final int length = frame.bytes().length;
+    try {
+      if (out == null || fileBytes + RECORD_HEADER_BYTES + length > maxFileBytes) {
+        rotate();
+      }
+      out.writeLong(frame.timeMillis());
+      out.writeByte(frame.inbound() ? 1 : 0);
+      out.writeInt(length);
+      out.write(frame.bytes());
+      fileBytes += RECORD_HEADER_BYTES + length;
+    } catch (final IOException e) {
+      LOG.warn("Unable to write PDU capture, disabling capture", e);
+      disabled = true;
+      closeQuietly();
+    }
+  }
+
+  private void flushQuietly() {
+    if (out != null) {
+      try {
+        out.flush();
+      } catch (final IOException e) {
+        LOG.warn("Unable to flush PDU capture", e);
+      }
+    }
+  }
+
+  private void rotate() throws IOException {
+    if (out != null) {
+      out.close();
+    }
+    final var file = directory.resolve(String.format("%s-%05d%s", prefix, fileIndex++, SUFFIX));
+    files.addLast(file);
+    while (files.size() > maxFiles) {
+      Files.deleteIfExists(files.removeFirst());
+    }
+    out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+    out.writeInt(MAGIC);
+    fileBytes = 4;
+  }
+
+  private void closeQuietly() {
+    try {
+      if (out != null) {
+        out.close();
+      }
+    } catch (final IOException e) {
+      LOG.debug("Unable to close PDU capture", e);
+    } finally {
+      out = null;
+    }
+  }
+
+  /** Writes the queued frames and closes the file. */
+  @Override
+  public void close() {
+    if (!thread.isAlive()) {
+      return;
+    }
+    try {
+      queue.put(CLOSE);
+      thread.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    disabled = true;
+    if (dropped.get() > 0) {
+      LOG.warn("PDU capture dropped {} frames", dropped.get());
+    }
+  }
+}
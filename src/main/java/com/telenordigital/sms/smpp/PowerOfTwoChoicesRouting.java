@@ -0,0 +1,60 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks two connections at random and takes the one with more open window slots. It spreads the
+ * load almost as well as always taking the least loaded connection, in constant time, and
+ * concurrent submits do not all pile onto the same connection.
+ */
+class PowerOfTwoChoicesRouting implements RoutingStrategy {
+
+  @Override
+  public SmppConnection select(final SmppSmsMt sms, final SmppConnection[] active) {
+    final int n = active.length;
+    if (n == 1) {
+      return active[0].isWritable() ? active[0] : null;
+    }
+    final var random = ThreadLocalRandom.current();
+    final int i = random.nextInt(n);
+    // a second, different connection
+    final int j = (i + 1 + random.nextInt(n - 1)) % n;
+    final var first = active[i];
+    final var second = active[j];
+
+    if (first.isWritable() && second.isWritable()) {
+      return first.getOpenWindowSlots() >= second.getOpenWindowSlots() ? first : second;
+    } else if (first.isWritable()) {
+      return first;
+    } else if (second.isWritable()) {
+      return second;
+    }
+    // both have a full outbound buffer, look for any other connection that accepts submits
+    for (final var conn : active) {
+      if (conn.isWritable()) {
+        return conn;
+      }
+    }
+    return null;
+  }
+}
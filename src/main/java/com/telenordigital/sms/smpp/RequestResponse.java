@@ -20,32 +20,57 @@ package com.telenordigital.sms.smpp;
  * #L%
  */
 
+import com.telenordigital.sms.smpp.pdu.Command;
 import com.telenordigital.sms.smpp.pdu.RequestPdu;
 import com.telenordigital.sms.smpp.pdu.ResponsePdu;
-import io.netty.channel.ChannelHandlerContext;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 
 record RequestResponse<T extends ResponsePdu>(
-    RequestPdu<T> request, CompletableFuture<T> responseFuture, long startedTimeMillis) {
+    RequestPdu<T> request, CompletableFuture<T> responseFuture, long startedNanos)
+    implements OutboundRequest {
   public RequestResponse(RequestPdu<T> request) {
-    this(request, new CompletableFuture<>(), System.currentTimeMillis());
+    this(request, new CompletableFuture<>(), System.nanoTime());
   }
 
-  CompletableFuture<T> completeExceptionally(
-      final ChannelHandlerContext ctx, final String message) {
-    return completeExceptionally(ctx.executor(), message);
+  @Override
+  public int pduCount() {
+    return 1;
+  }
+
+  @Override
+  public Command command() {
+    return request.command();
+  }
+
+  @Override
+  public void fail(final Executor executor, final SmppException e) {
+    completeExceptionally(executor, e);
   }
 
   CompletableFuture<T> completeExceptionally(final Executor executor, final String message) {
+    return completeExceptionally(executor, new SmppException(message));
+  }
+
+  /** Completes the future on the executor, or in the calling thread if the executor is null. */
+  CompletableFuture<T> completeExceptionally(final Executor executor, final SmppException e) {
+    if (executor == null) {
+      responseFuture.completeExceptionally(e);
+      return responseFuture;
+    }
     return responseFuture.completeAsync(
         () -> {
-          throw new SmppException(message);
+          throw e;
         },
         executor);
   }
 
-  CompletableFuture<T> complete(final ChannelHandlerContext ctx, final T value) {
-    return responseFuture.completeAsync(() -> value, ctx.executor());
+  /** Completes the future on the executor, or in the calling thread if the executor is null. */
+  CompletableFuture<T> complete(final Executor executor, final T value) {
+    if (executor == null) {
+      responseFuture.complete(value);
+      return responseFuture;
+    }
+    return responseFuture.completeAsync(() -> value, executor);
   }
 }
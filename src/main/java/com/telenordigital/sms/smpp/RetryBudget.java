@@ -0,0 +1,59 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the retries of a group to a share of its traffic. Every submitted message deposits a
+ * fraction of a retry, and every retry withdraws a whole one, so during an SMSC-wide incident the
+ * retries cannot multiply the load. Thread safe.
+ */
+class RetryBudget {
+  // the balance is kept in thousandths of a retry
+  private static final long UNIT = 1000;
+
+  private final long deposit;
+  private final long max;
+  private final AtomicLong balance;
+
+  RetryBudget(final double ratio, final int burst) {
+    this.deposit = Math.round(ratio * UNIT);
+    // a quiet period must not save up a storm of retries
+    this.max = Math.max(burst, 1) * UNIT;
+    this.balance = new AtomicLong(burst * UNIT);
+  }
+
+  void deposit(final int messages) {
+    balance.accumulateAndGet(deposit * messages, (b, d) -> Math.min(max, b + d));
+  }
+
+  boolean tryWithdraw() {
+    long b;
+    do {
+      b = balance.get();
+      if (b < UNIT) {
+        return false;
+      }
+    } while (!balance.compareAndSet(b, b - UNIT));
+    return true;
+  }
+}
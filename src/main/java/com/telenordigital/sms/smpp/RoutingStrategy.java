@@ -0,0 +1,60 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.telenordigital.sms.smpp.config.Routing;
+import java.util.List;
+
+/** Picks the connection a message is submitted on. */
+interface RoutingStrategy {
+
+  /**
+   * Returns one of the active connections, or null if none of them accepts submits.
+   *
+   * @param active the active connections, never empty
+   */
+  SmppConnection select(SmppSmsMt sms, SmppConnection[] active);
+
+  /**
+   * The connection the message belongs to whatever the load, or null if any connection may take it.
+   * A half-open connection is only probed with the messages it owns.
+   */
+  default SmppConnection owner(final SmppSmsMt sms) {
+    return null;
+  }
+
+  /** Whether messages must go through the selected connection even when submitted in bulk. */
+  default boolean preservesOrder() {
+    return false;
+  }
+
+  /**
+   * @param connections all the connections of the group, in a stable order
+   */
+  static RoutingStrategy create(final Routing routing, final List<SmppConnection> connections) {
+    return switch (routing) {
+      case POWER_OF_TWO_CHOICES -> new PowerOfTwoChoicesRouting();
+      case LEAST_LOADED -> new LeastLoadedRouting();
+      case LATENCY_WEIGHTED -> new LatencyWeightedRouting();
+      case CONSISTENT_HASH -> new ConsistentHashRouting(connections);
+    };
+  }
+}
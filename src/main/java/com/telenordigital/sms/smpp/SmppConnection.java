@@ -40,12 +40,14 @@ import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.IoEventLoopGroup;
 import io.netty.channel.MultiThreadIoEventLoopGroup;
-import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslHandler;
@@ -59,8 +61,13 @@ import java.io.Closeable;
 import java.io.UncheckedIOException;
 import java.lang.invoke.MethodHandles;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import javax.net.ssl.SNIHostName;
 import javax.net.ssl.SSLEngine;
@@ -73,33 +80,110 @@ class SmppConnection implements Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
   private static final int MAX_SMPP_FRAME_LENGTH = 64 * 1024; // 64K based on the spec
 
-  private OutboundPduHandler outboundPduHandler;
+  // read from other threads for monitoring
+  private volatile OutboundPduHandler outboundPduHandler;
   final SmppConnectionConfig config;
-  private final MultiThreadIoEventLoopGroup group;
+  private final IoEventLoopGroup group;
+  // the group is shut down on close only when it is not shared with other connections
+  private final boolean ownsGroup;
   private final Bootstrap bootstrap;
+  final Executor handlerExecutor;
+  // kept across reconnects
+  private final ConnectionStats stats = new ConnectionStats();
+  // null if disabled, kept across reconnects like the stats
+  private final CircuitBreaker breaker;
+  private final PduCaptureWriter captureWriter;
   final Function<SmppSmsMo, CompletableFuture<Void>> moHandler;
   final Function<SmppDeliveryReceipt, CompletableFuture<Void>> drHandler;
 
-  private SmppState state = SmppState.INACTIVE;
-  private Channel channel;
+  private volatile SmppState state = SmppState.INACTIVE;
+  // replaced on the event loop at reconnect, read by the threads submitting
+  private volatile Channel channel;
   private String remoteSystemId;
+  private ScheduledFuture<?> reconnectFuture;
+  private volatile Consumer<Boolean> writabilityListener = writable -> {};
+  private volatile Runnable stateListener = () -> {};
 
   SmppConnection(
       final SmppConnectionConfig config,
       final Function<SmppSmsMo, CompletableFuture<Void>> moHandler,
       final Function<SmppDeliveryReceipt, CompletableFuture<Void>> drHandler) {
-    this.config = config;
-    group =
+    this(config, SmppTransport.resolve(config.transport().type()), moHandler, drHandler);
+  }
+
+  private SmppConnection(
+      final SmppConnectionConfig config,
+      final SmppTransport transport,
+      final Function<SmppSmsMo, CompletableFuture<Void>> moHandler,
+      final Function<SmppDeliveryReceipt, CompletableFuture<Void>> drHandler) {
+    // a channel is always served by a single event loop, more threads would just stay idle
+    this(
+        config,
         new MultiThreadIoEventLoopGroup(
-            new DefaultThreadFactory(config.connectionUrl().toString()), NioIoHandler.newFactory());
+            1,
+            new DefaultThreadFactory(config.connectionUrl().toString()),
+            transport.ioHandlerFactory()),
+        transport,
+        true,
+        null,
+        moHandler,
+        drHandler);
+  }
+
+  /**
+   * Creates a connection on a shared event loop group. The MO and delivery receipt handlers are
+   * called on the handler executor, or on the event loop if it is null.
+   */
+  SmppConnection(
+      final SmppConnectionConfig config,
+      final IoEventLoopGroup group,
+      final Executor handlerExecutor,
+      final Function<SmppSmsMo, CompletableFuture<Void>> moHandler,
+      final Function<SmppDeliveryReceipt, CompletableFuture<Void>> drHandler) {
+    this(config, group, SmppTransport.of(group), false, handlerExecutor, moHandler, drHandler);
+  }
+
+  private SmppConnection(
+      final SmppConnectionConfig config,
+      final IoEventLoopGroup group,
+      final SmppTransport transport,
+      final boolean ownsGroup,
+      final Executor handlerExecutor,
+      final Function<SmppSmsMo, CompletableFuture<Void>> moHandler,
+      final Function<SmppDeliveryReceipt, CompletableFuture<Void>> drHandler) {
+    this.config = config;
+    this.group = group;
+    this.ownsGroup = ownsGroup;
+    this.handlerExecutor = handlerExecutor;
     this.moHandler = moHandler;
     this.drHandler = drHandler;
+    this.breaker =
+        config.circuitBreaker() == null
+            ? null
+            : new CircuitBreaker(
+                config.connectionUrl().toString(),
+                config.circuitBreaker(),
+                group,
+                () -> stateListener.run());
+    this.captureWriter =
+        config.capture() == null
+            ? null
+            : new PduCaptureWriter(
+                config.capture().directory(),
+                config.host() + "-" + config.port(),
+                config.capture().maxFileBytes(),
+                config.capture().maxFiles());
 
     bootstrap =
         new Bootstrap()
             .group(group)
             .remoteAddress(config.host(), config.port())
-            .channel(NioSocketChannel.class)
+            .channel(transport.channelClass())
+            .option(
+                ChannelOption.WRITE_BUFFER_WATER_MARK,
+                new WriteBufferWaterMark(
+                    config.transport().writeBufferLowWaterMark(),
+                    config.transport().writeBufferHighWaterMark()))
             .handler(
                 new ChannelInitializer<SocketChannel>() {
                   @Override
@@ -107,6 +191,8 @@ class SmppConnection implements Closeable {
                     setupPipeline(channel, config.tls(), config.defaultEncoding().charset);
                   }
                 });
+    transport.configure(bootstrap, config.transport());
+    LOG.debug("Using {} transport for {}", transport, config.connectionUrl());
 
     connectInternal();
   }
@@ -115,6 +201,45 @@ class SmppConnection implements Closeable {
     return outboundPduHandler == null ? 0 : outboundPduHandler.getOpenWindowSlots();
   }
 
+  ConnectionStats getStats() {
+    return stats;
+  }
+
+  SmppCircuitState getCircuitState() {
+    return breaker == null ? SmppCircuitState.CLOSED : breaker.state();
+  }
+
+  /**
+   * Whether the circuit breaker keeps the connection out of routing. While half-open, it only takes
+   * the probes, see {@link #tryProbe()}.
+   */
+  boolean isEjected() {
+    return breaker != null && breaker.state() != SmppCircuitState.CLOSED;
+  }
+
+  /** Whether the circuit breaker is half-open and lets the next submit through as a probe. */
+  boolean tryProbe() {
+    return breaker != null && breaker.tryReserveProbe(System.nanoTime());
+  }
+
+  int getInFlight() {
+    return outboundPduHandler == null ? 0 : outboundPduHandler.getInFlight();
+  }
+
+  double getSubmitRate() {
+    return outboundPduHandler == null ? 0 : outboundPduHandler.getSubmitRate();
+  }
+
+  /** The listener is called on the event loop whenever the channel writability changes. */
+  void onWritabilityChanged(final Consumer<Boolean> listener) {
+    writabilityListener = listener;
+  }
+
+  /** The listener is called whenever the connection state changes. */
+  void onStateChanged(final Runnable listener) {
+    stateListener = listener;
+  }
+
   class ConnectionHandler extends ChannelInboundHandlerAdapter {
 
     private Bind createBind() {
@@ -162,13 +287,20 @@ class SmppConnection implements Closeable {
       }
 
       // Don't reconnect if the connection is being closed
-      if (state == SmppState.CLOSING || state == SmppState.CLOSED) {
+      if (isClosing()) {
         LOG.debug("Skip reconnecting, connection is closing");
         return;
       }
       scheduleReconnect();
     }
 
+    @Override
+    public void channelWritabilityChanged(final ChannelHandlerContext ctx) {
+      final boolean writable = ctx.channel().isWritable();
+      LOG.debug("Channel writability changed: {}", writable);
+      writabilityListener.accept(writable);
+    }
+
     @Override
     public void userEventTriggered(final ChannelHandlerContext ctx, final Object evt)
         throws Exception {
@@ -226,17 +358,41 @@ class SmppConnection implements Closeable {
     }
 
     outboundPduHandler =
-        new OutboundPduHandler(config.windowSize(), config.requestTimeoutSeconds());
-
+        new OutboundPduHandler(
+            config.windowSize(),
+            config.requestTimeoutSeconds(),
+            config.responseCompletion(),
+            handlerExecutor,
+            config.windowQueue(),
+            config.throttle(),
+            config.adaptiveWindow(),
+            stats,
+            breaker);
+
+    // hex-dumps every frame, so it is installed only when explicitly enabled
+    if (LOG.isTraceEnabled()) {
+      channel
+          .pipeline()
+          .addLast("logging", new LoggingHandler(SmppConnection.class, LogLevel.TRACE));
+    }
+    if (config.flush() != null) {
+      channel.pipeline().addLast("flushCoalescer", new FlushCoalescingHandler(config.flush()));
+    }
     channel
         .pipeline()
-        .addLast("logging", new LoggingHandler(SmppConnection.class))
         .addLast(
             "idleState",
             new IdleStateHandler(config.requestTimeoutSeconds(), 0, config.idleTimeSeconds()))
         .addLast(
             "frameDecoder", new LengthFieldBasedFrameDecoder(MAX_SMPP_FRAME_LENGTH, 0, 4, -4, 4))
-        .addLast("frameEncoder", new LengthFieldPrepender(4, 0, true))
+        .addLast("frameEncoder", new LengthFieldPrepender(4, 0, true));
+    if (captureWriter != null) {
+      channel
+          .pipeline()
+          .addLast("capture", new PduCaptureHandler(captureWriter, config.capture().sampleRate()));
+    }
+    channel
+        .pipeline()
         .addLast("decoder", new PduDecoder(defaultCharset))
         .addLast("encoder", new PduEncoder())
         .addLast("inboundHandler", new InboundPduHandler(this))
@@ -252,6 +408,9 @@ class SmppConnection implements Closeable {
     if (!future.isSuccess()) {
       LOG.info("Unable to connect: {}", future.cause().getMessage(), future.cause());
       future.channel().close();
+    } else if (isClosing()) {
+      // the connection has been closed while connecting
+      future.channel().close();
     } else {
       channel = future.channel();
     }
@@ -259,13 +418,24 @@ class SmppConnection implements Closeable {
 
   void scheduleReconnect() {
     LOG.info("Reconnecting in {}s", config.reconnectTimeSeconds());
-    group.schedule(this::connectInternal, config.reconnectTimeSeconds(), TimeUnit.SECONDS);
+    reconnectFuture =
+        group.schedule(this::connectInternal, config.reconnectTimeSeconds(), TimeUnit.SECONDS);
+  }
+
+  private boolean isClosing() {
+    return state == SmppState.CLOSING || state == SmppState.CLOSED;
   }
 
   public boolean isActive() {
     return state == SmppState.ACTIVE;
   }
 
+  /** Whether the outbound buffer of the channel is below the high water mark. */
+  boolean isWritable() {
+    final var ch = channel;
+    return ch != null && ch.isWritable();
+  }
+
   CompletableFuture<EnquireLinkResp> enquireLink() {
     return submitInternal(new EnquireLink(), true);
   }
@@ -283,19 +453,88 @@ class SmppConnection implements Closeable {
         .thenCompose(resp -> stateChange(SmppState.DRAINING_INBOUND).thenApply(v -> resp));
   }
 
+  /**
+   * Writes all the submit_sm PDUs in one event loop task and flushes them once, instead of a flush
+   * per PDU.
+   */
+  List<CompletableFuture<SubmitSmResp>> submitAll(final List<SubmitSm> submitSms) {
+    return submitMessages(submitSms.stream().map(List::of).toList()).stream()
+        .map(futures -> futures.get(0))
+        .toList();
+  }
+
+  /**
+   * Submits the parts of a concatenated message. They are admitted into the window together, or all
+   * fail with "Window is full" before any of them is sent.
+   */
+  List<CompletableFuture<SubmitSmResp>> submitMultipart(final List<SubmitSm> parts) {
+    return submitMessages(List.of(parts)).get(0);
+  }
+
+  /**
+   * Writes the messages in one event loop task and flushes them once. Returns the futures of the
+   * parts of every message.
+   */
+  List<List<CompletableFuture<SubmitSmResp>>> submitMessages(final List<List<SubmitSm>> messages) {
+    final List<OutboundRequest> requests = new ArrayList<>(messages.size());
+    final List<List<CompletableFuture<SubmitSmResp>>> futures = new ArrayList<>(messages.size());
+    for (final var parts : messages) {
+      final List<RequestResponse<SubmitSmResp>> partRequests =
+          parts.stream().map(RequestResponse::new).toList();
+      requests.add(
+          partRequests.size() == 1 ? partRequests.get(0) : new MultipartRequest(partRequests));
+      futures.add(partRequests.stream().map(RequestResponse::responseFuture).toList());
+    }
+
+    final var ch = channel;
+    final var rejection = rejection(ch);
+    if (rejection != null) {
+      requests.forEach(r -> r.fail(ch == null ? null : ch.eventLoop(), rejection));
+    } else {
+      LOG.debug("Submitting {} messages", requests.size());
+      ch.eventLoop()
+          .execute(
+              () -> {
+                requests.forEach(ch::write);
+                ch.flush();
+              });
+    }
+    return futures;
+  }
+
   private <R extends ResponsePdu, T extends RequestPdu<R>> CompletableFuture<R> submitInternal(
       final T pdu, final boolean requireActive) {
     final var requestResponse = new RequestResponse<>(pdu);
-    if (requireActive && !isActive()) {
-      LOG.debug("Ignore sending PDUs for non-active connections. State:: {}. ", state);
-      requestResponse.completeExceptionally(channel.eventLoop(), "Connection is inactive");
-    } else {
+    final var ch = channel;
+    if (!requireActive || !rejected(requestResponse, ch)) {
       LOG.debug("Submitting PDU: {}", pdu);
-      channel.writeAndFlush(requestResponse);
+      ch.writeAndFlush(requestResponse);
     }
     return requestResponse.responseFuture();
   }
 
+  /** Fails the request if the connection does not accept submits. */
+  private boolean rejected(final RequestResponse<?> requestResponse, final Channel ch) {
+    final var rejection = rejection(ch);
+    if (rejection != null) {
+      requestResponse.completeExceptionally(ch == null ? null : ch.eventLoop(), rejection);
+      return true;
+    }
+    return false;
+  }
+
+  /** Why the connection does not accept submits, or null if it does. */
+  private SmppException rejection(final Channel ch) {
+    if (!isActive() || ch == null) {
+      LOG.debug("Ignore sending PDUs for non-active connections. State:: {}. ", state);
+      return new SmppException("Connection is inactive");
+    } else if (!ch.isWritable()) {
+      LOG.debug("Ignore sending PDUs, the outbound buffer is full");
+      return new SmppBackpressureException("Connection is not writable");
+    }
+    return null;
+  }
+
   @Override
   public void close() {
     // try to unbind if the session is bound
@@ -310,13 +549,26 @@ class SmppConnection implements Closeable {
       }
     }
 
-    if (channel != null) {
-      stateChange(SmppState.CLOSING);
+    final var active = channel;
+    stateChange(SmppState.CLOSING);
+    if (reconnectFuture != null) {
+      reconnectFuture.cancel(false);
+    }
+    if (ownsGroup) {
       group.shutdownGracefully().syncUninterruptibly();
-      channel = null;
-      outboundPduHandler = null;
-      stateChange(SmppState.CLOSED);
+    } else if (active != null) {
+      // the event loop is shared with other connections, close only our own channel
+      active.close().syncUninterruptibly();
+    }
+    if (captureWriter != null) {
+      captureWriter.close();
     }
+    if (breaker != null) {
+      breaker.close();
+    }
+    channel = null;
+    outboundPduHandler = null;
+    stateChange(SmppState.CLOSED);
   }
 
   String getRemoteSystemId() {
@@ -326,6 +578,7 @@ class SmppConnection implements Closeable {
   CompletableFuture<Void> stateChange(final SmppState state) {
     LOG.debug("Connection state changed {} -> {}", this.state, state);
     this.state = state;
+    stateListener.run();
     if (channel != null) {
       final var event = new SmppDrainEvent(state);
       channel.pipeline().fireUserEventTriggered(event);
@@ -337,6 +590,10 @@ class SmppConnection implements Closeable {
   }
 
   String info() {
+    if (breaker != null) {
+      return String.format(
+          "Connection: %s. State: %s. Circuit: %s", config.connectionUrl(), state, breaker.state());
+    }
     return String.format("Connection: %s. State: %s", config.connectionUrl(), state);
   }
 }
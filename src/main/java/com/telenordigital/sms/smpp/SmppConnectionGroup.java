@@ -21,17 +21,35 @@ package com.telenordigital.sms.smpp;
  */
 
 import com.telenordigital.sms.smpp.SmppMapping.Status;
+import com.telenordigital.sms.smpp.config.HandlerExecutor;
+import com.telenordigital.sms.smpp.config.RetryConfig;
 import com.telenordigital.sms.smpp.config.SmppConnectionConfig;
+import com.telenordigital.sms.smpp.config.SmppGroupConfig;
 import com.telenordigital.sms.smpp.pdu.SubmitSm;
 import com.telenordigital.sms.smpp.pdu.SubmitSmResp;
+import io.netty.channel.IoEventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.Closeable;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.time.Clock;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -46,6 +64,20 @@ public class SmppConnectionGroup implements Closeable {
   private final List<SmppConnection> connections;
   private final Clock clock;
   private final String name;
+  private final IoEventLoopGroup eventLoopGroup;
+  // an event loop group passed by the caller is not shut down on close
+  private final boolean ownsEventLoopGroup;
+  // null if the handlers are called on the event loop
+  private final ExecutorService ownedHandlerExecutor;
+  private final List<Consumer<SmppWritabilityEvent>> writabilityListeners =
+      new CopyOnWriteArrayList<>();
+  private final RoutingStrategy routing;
+  private final RetryConfig retry;
+  private final RetryBudget retryBudget;
+  // copied on every connection state change, so a submit reads it without locking or allocating
+  private volatile SmppConnection[] activeConnections = new SmppConnection[0];
+  // active connections with a half-open circuit breaker, they only take probes
+  private volatile SmppConnection[] probingConnections = new SmppConnection[0];
 
   public SmppConnectionGroup(
       final Clock clock,
@@ -53,15 +85,149 @@ public class SmppConnectionGroup implements Closeable {
       final List<SmppConnectionConfig> config,
       final Function<SmppDeliveryReceipt, CompletableFuture<Void>> smsDrHandler,
       final Function<SmppSmsMo, CompletableFuture<Void>> smsMoHandler) {
+    this(clock, name, new SmppGroupConfig(), config, smsDrHandler, smsMoHandler);
+  }
+
+  public SmppConnectionGroup(
+      final Clock clock,
+      final String name,
+      final SmppGroupConfig groupConfig,
+      final List<SmppConnectionConfig> config,
+      final Function<SmppDeliveryReceipt, CompletableFuture<Void>> smsDrHandler,
+      final Function<SmppSmsMo, CompletableFuture<Void>> smsMoHandler) {
+    this(
+        clock,
+        name,
+        createEventLoopGroup(name, groupConfig, config),
+        true,
+        groupConfig,
+        config,
+        smsDrHandler,
+        smsMoHandler);
+  }
+
+  /**
+   * Creates a group using an event loop group owned by the caller, e.g. shared between several
+   * groups. The transport of the event loop group is used for all the connections, and the group is
+   * not shut down on close.
+   */
+  public SmppConnectionGroup(
+      final Clock clock,
+      final String name,
+      final SmppGroupConfig groupConfig,
+      final IoEventLoopGroup eventLoopGroup,
+      final List<SmppConnectionConfig> config,
+      final Function<SmppDeliveryReceipt, CompletableFuture<Void>> smsDrHandler,
+      final Function<SmppSmsMo, CompletableFuture<Void>> smsMoHandler) {
+    this(clock, name, eventLoopGroup, false, groupConfig, config, smsDrHandler, smsMoHandler);
+  }
+
+  private SmppConnectionGroup(
+      final Clock clock,
+      final String name,
+      final IoEventLoopGroup eventLoopGroup,
+      final boolean ownsEventLoopGroup,
+      final SmppGroupConfig groupConfig,
+      final List<SmppConnectionConfig> config,
+      final Function<SmppDeliveryReceipt, CompletableFuture<Void>> smsDrHandler,
+      final Function<SmppSmsMo, CompletableFuture<Void>> smsMoHandler) {
     this.name = name;
+    this.eventLoopGroup = eventLoopGroup;
+    this.ownsEventLoopGroup = ownsEventLoopGroup;
+    // an executor passed in the group config belongs to the caller and is not shut down on close
+    this.ownedHandlerExecutor =
+        groupConfig.executor() == null
+            ? createHandlerExecutor(name, groupConfig.handlerExecutor())
+            : null;
+    final Executor handlerExecutor =
+        groupConfig.executor() != null ? groupConfig.executor() : ownedHandlerExecutor;
     connections =
         config.stream()
             .flatMap(
                 conn ->
                     IntStream.range(0, conn.numberOfBinds())
-                        .mapToObj(i -> new SmppConnection(conn, smsMoHandler, smsDrHandler)))
+                        .mapToObj(
+                            i ->
+                                new SmppConnection(
+                                    conn,
+                                    eventLoopGroup,
+                                    handlerExecutor,
+                                    smsMoHandler,
+                                    smsDrHandler)))
             .toList();
+    this.routing = RoutingStrategy.create(groupConfig.routing(), connections);
+    this.retry = groupConfig.retry();
+    this.retryBudget = new RetryBudget(retry.budgetRatio(), retry.budgetBurst());
     this.clock = clock;
+
+    IntStream.range(0, connections.size())
+        .forEach(
+            i ->
+                connections
+                    .get(i)
+                    .onWritabilityChanged(
+                        writable -> writabilityChanged(connectionName(i), writable)));
+    connections.forEach(c -> c.onStateChanged(this::refreshActiveConnections));
+    refreshActiveConnections();
+  }
+
+  private synchronized void refreshActiveConnections() {
+    activeConnections =
+        connections.stream()
+            .filter(c -> c.isActive() && !c.isEjected())
+            .toArray(SmppConnection[]::new);
+    probingConnections =
+        connections.stream()
+            .filter(c -> c.isActive() && c.getCircuitState() == SmppCircuitState.HALF_OPEN)
+            .toArray(SmppConnection[]::new);
+  }
+
+  private static IoEventLoopGroup createEventLoopGroup(
+      final String name,
+      final SmppGroupConfig groupConfig,
+      final List<SmppConnectionConfig> config) {
+    final var transports =
+        config.stream()
+            .map(c -> SmppTransport.resolve(c.transport().type()))
+            .collect(Collectors.toSet());
+    if (transports.size() > 1) {
+      throw new IllegalArgumentException(
+          "All connections of a group must use the same transport: " + transports);
+    }
+    final var transport = transports.stream().findAny().orElse(SmppTransport.NIO);
+
+    return new MultiThreadIoEventLoopGroup(
+        ioThreads(groupConfig, config),
+        new DefaultThreadFactory("smpp-" + name),
+        transport.ioHandlerFactory());
+  }
+
+  private static ExecutorService createHandlerExecutor(
+      final String name, final HandlerExecutor handlerExecutor) {
+    if (handlerExecutor == HandlerExecutor.EVENT_LOOP) {
+      return null;
+    }
+    try {
+      // virtual threads are available since Java 21, while the library still runs on Java 16
+      final var factory =
+          MethodHandles.publicLookup()
+              .findStatic(
+                  Executors.class,
+                  "newVirtualThreadPerTaskExecutor",
+                  MethodType.methodType(ExecutorService.class));
+      return (ExecutorService) factory.invoke();
+    } catch (final Throwable e) {
+      LOG.warn("Virtual threads are not available, using a cached thread pool: {}", e.toString());
+      return Executors.newCachedThreadPool(new DefaultThreadFactory("smpp-handler-" + name));
+    }
+  }
+
+  static int ioThreads(final SmppGroupConfig groupConfig, final List<SmppConnectionConfig> config) {
+    if (groupConfig.ioThreads() > 0) {
+      return groupConfig.ioThreads();
+    }
+    final int binds = config.stream().mapToInt(SmppConnectionConfig::numberOfBinds).sum();
+    return Math.max(1, Math.min(binds, Runtime.getRuntime().availableProcessors()));
   }
 
   public Map<String, Supplier<Integer>> connectionsWithOpenWindowSlots() {
@@ -69,56 +235,300 @@ public class SmppConnectionGroup implements Closeable {
         .boxed()
         .collect(
             Collectors.toMap(
-                i -> String.format("%s-%d", this.name, i),
-                i -> () -> connections.get(i).getOpenWindowSlots()));
+                this::connectionName, i -> () -> connections.get(i).getOpenWindowSlots()));
+  }
+
+  /**
+   * The submit_sm per second each connection currently admits, lowered while the SMSC throttles us.
+   * Infinite for connections without a throttle.
+   */
+  public Map<String, Supplier<Double>> connectionsWithSubmitRate() {
+    return IntStream.range(0, connections.size())
+        .boxed()
+        .collect(
+            Collectors.toMap(this::connectionName, i -> () -> connections.get(i).getSubmitRate()));
+  }
+
+  /** Moving averages of the submit_sm response time and error rate of each connection. */
+  public Map<String, Supplier<SmppConnectionStats>> connectionsWithStats() {
+    return IntStream.range(0, connections.size())
+        .boxed()
+        .collect(
+            Collectors.toMap(
+                this::connectionName, i -> () -> connections.get(i).getStats().snapshot()));
+  }
+
+  /** The circuit breaker state of each connection, CLOSED for connections without a breaker. */
+  public Map<String, Supplier<SmppCircuitState>> connectionsWithCircuitState() {
+    return IntStream.range(0, connections.size())
+        .boxed()
+        .collect(
+            Collectors.toMap(
+                this::connectionName, i -> () -> connections.get(i).getCircuitState()));
+  }
+
+  private String connectionName(final int index) {
+    return String.format("%s-%d", this.name, index);
+  }
+
+  /**
+   * Registers a listener for connections which stop or resume accepting submits because their
+   * outbound buffer is full. The listener is called on an I/O thread and must not block.
+   */
+  public void addWritabilityListener(final Consumer<SmppWritabilityEvent> listener) {
+    writabilityListeners.add(listener);
+  }
+
+  private void writabilityChanged(final String connection, final boolean writable) {
+    final var event =
+        new SmppWritabilityEvent(
+            connection,
+            writable,
+            connections.stream().filter(c -> c.isActive() && c.isWritable()).count());
+    writabilityListeners.forEach(l -> l.accept(event));
   }
 
   public CompletableFuture<SmppResponse> submit(final SmppSmsMt sms) {
-    return trySubmit(sms)
+    retryBudget.deposit(1);
+    return trySubmit(sms, null, 1);
+  }
+
+  /**
+   * Submits a batch of messages, each on the connection the routing strategy picks for it. Every
+   * connection writes its share of the PDUs before flushing once. The returned futures are in the
+   * order of the messages.
+   */
+  public List<CompletableFuture<SmppResponse>> submitAll(final List<SmppSmsMt> messages) {
+    retryBudget.deposit(messages.size());
+    final var active = activeConnections;
+    // the window slots are taken only when a batch is written, so the routing strategy sees the
+    // same load for the whole batch. Unless the order matters, a connection stops taking messages
+    // once its share reaches its open slots, until all of them are full
+    var candidates = active;
+    boolean capped = !routing.preservesOrder();
+    final Map<SmppConnection, List<Integer>> batches = new LinkedHashMap<>();
+    final List<Integer> unrouted = new ArrayList<>();
+    for (int i = 0; i < messages.size(); i++) {
+      final var conn = candidates.length == 0 ? null : routing.select(messages.get(i), candidates);
+      if (conn == null) {
+        unrouted.add(i);
+        continue;
+      }
+      final var batch = batches.computeIfAbsent(conn, c -> new ArrayList<>());
+      batch.add(i);
+      if (capped && batch.size() >= conn.getOpenWindowSlots()) {
+        candidates =
+            Arrays.stream(candidates).filter(c -> c != conn).toArray(SmppConnection[]::new);
+        if (candidates.length == 0) {
+          // every connection is full, the rest is queued wherever the routing strategy picks
+          candidates = active;
+          capped = false;
+        }
+      }
+    }
+    final var results = submitBatches(messages, batches);
+    // answered with the reason no connection could take them
+    unrouted.forEach(i -> results.set(i, trySubmit(messages.get(i), null, 1)));
+    return results;
+  }
+
+  private List<CompletableFuture<SmppResponse>> submitBatches(
+      final List<SmppSmsMt> messages, final Map<SmppConnection, List<Integer>> batches) {
+    final List<CompletableFuture<SmppResponse>> results =
+        new ArrayList<>(Collections.nCopies(messages.size(), null));
+    for (final var entry : batches.entrySet()) {
+      final var conn = entry.getKey();
+      final var details = info() + ". " + conn.info();
+      final var batch = entry.getValue();
+      final var resps =
+          conn.submitMessages(batch.stream().map(i -> createPdus(conn, messages.get(i))).toList());
+      for (int m = 0; m < batch.size(); m++) {
+        final int index = batch.get(m);
+        results.set(index, complete(messages.get(index), conn, resps.get(m), details, null, 1));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Submits the message again on a retriable error, while attempts and the retry budget are left.
+   *
+   * @param failed the connections which already failed the message, null on the first attempt
+   */
+  private CompletableFuture<SmppResponse> retry(
+      final SmppSmsMt sms,
+      final SmppConnection conn,
+      final CompletableFuture<SmppResponse> response,
+      final List<SmppConnection> failed,
+      final int attempt) {
+    return response.thenCompose(
+        r -> {
+          if (r.result() != SmppResultCode.RETRIABLE_ERROR || attempt >= retry.maxAttempts()) {
+            return CompletableFuture.completedFuture(r);
+          }
+          if (!retryBudget.tryWithdraw()) {
+            LOG.debug("SubmitSm failed with a retriable error. Retry budget exhausted: {}", r);
+            return CompletableFuture.completedFuture(r);
+          }
+          LOG.info(
+              "SubmitSm failed with a retriable error. Retry {} of {}: {}",
+              attempt,
+              retry.maxAttempts() - 1,
+              r);
+          final var excluded = failed == null ? new ArrayList<SmppConnection>() : failed;
+          excluded.add(conn);
+          final long delay = retryDelayMillis(attempt);
+          if (delay == 0) {
+            return trySubmit(sms, excluded, attempt + 1);
+          }
+          return CompletableFuture.runAsync(
+                  () -> {},
+                  CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, eventLoopGroup))
+              .thenCompose(v -> trySubmit(sms, excluded, attempt + 1))
+              .exceptionally(e -> mapException(e, info()));
+        });
+  }
+
+  private long retryDelayMillis(final int attempt) {
+    final long max =
+        Math.min(
+            retry.maxDelayMillis(), (long) retry.minDelayMillis() << Math.min(attempt - 1, 20));
+    if (max == 0) {
+      return 0;
+    }
+    // half of the delay is fixed, the other half random
+    return max / 2 + ThreadLocalRandom.current().nextLong(max - max / 2 + 1);
+  }
+
+  private CompletableFuture<SmppResponse> trySubmit(
+      final SmppSmsMt sms, final List<SmppConnection> failed, final int attempt) {
+    final var probe = probe(sms, failed);
+    if (probe != null) {
+      return submitInternal(probe, sms, failed, attempt);
+    }
+    var active = activeConnections;
+    if (active.length == 0) {
+      return CompletableFuture.completedFuture(
+          SmppResponse.routeDown("No active connections", info()));
+    }
+    if (failed != null) {
+      // the connections which failed are only retried when no other one is active
+      final var others =
+          Arrays.stream(active).filter(c -> !failed.contains(c)).toArray(SmppConnection[]::new);
+      if (others.length > 0) {
+        active = others;
+      }
+    }
+    final var conn = routing.select(sms, active);
+    if (conn == null) {
+      return CompletableFuture.completedFuture(
+          SmppResponse.backpressured("No writable connections", info()));
+    }
+    return submitInternal(conn, sms, failed, attempt);
+  }
+
+  /**
+   * A half-open connection the message is sent to as a probe, null if none takes one now. A message
+   * with an owning connection is only a probe of its owner, so its subscriber's order holds.
+   */
+  private SmppConnection probe(final SmppSmsMt sms, final List<SmppConnection> failed) {
+    final var owner = probingConnections.length == 0 ? null : routing.owner(sms);
+    for (final var conn : probingConnections) {
+      if ((owner == null || owner == conn)
+          && (failed == null || !failed.contains(conn))
+          && conn.isWritable()
+          && conn.tryProbe()) {
+        return conn;
+      }
+    }
+    return null;
+  }
+
+  private CompletableFuture<SmppResponse> submitInternal(
+      final SmppConnection conn,
+      final SmppSmsMt sms,
+      final List<SmppConnection> failed,
+      final int attempt) {
+    final var details = info() + ". " + conn.info();
+    return complete(
+        sms, conn, conn.submitMultipart(createPdus(conn, sms)), details, failed, attempt);
+  }
+
+  /**
+   * Completes the message with the responses of its parts. A connection whose window filled up
+   * between routing and writing rejects the message before sending it, a routing miss: the message
+   * is routed again without that connection while another one has open slots, which takes neither
+   * an attempt nor the retry budget. Any other retriable error is retried.
+   */
+  private CompletableFuture<SmppResponse> complete(
+      final SmppSmsMt sms,
+      final SmppConnection conn,
+      final List<CompletableFuture<SubmitSmResp>> resps,
+      final String details,
+      final List<SmppConnection> failed,
+      final int attempt) {
+    return CompletableFuture.allOf(resps.toArray(new CompletableFuture<?>[0]))
+        .handle((v, e) -> e != null && isWindowFull(e) && hasCapacityBesides(conn, failed))
         .thenCompose(
-            r -> {
-              if (r.result() == SmppResultCode.RETRIABLE_ERROR) {
-                LOG.info("SubmitSm failed with a retriable error. Retrying once: {}", r);
-                return trySubmit(sms);
+            missed -> {
+              if (!missed) {
+                return retry(sms, conn, merge(resps, details), failed, attempt);
               }
-              return CompletableFuture.completedFuture(r);
+              LOG.debug("Window of {} filled up, routing the message again", conn.info());
+              final var excluded =
+                  failed == null ? new ArrayList<SmppConnection>() : new ArrayList<>(failed);
+              excluded.add(conn);
+              return trySubmit(sms, excluded, attempt);
             });
   }
 
-  private CompletableFuture<SmppResponse> trySubmit(final SmppSmsMt sms) {
-    final var activeConnections = connections.stream().filter(SmppConnection::isActive).toList();
-    // connections with more free slots first
-    return activeConnections.stream()
-        .max(Comparator.comparing(SmppConnection::getOpenWindowSlots))
-        .map(conn -> submitInternal(conn, sms))
-        .orElseGet(
-            () ->
-                CompletableFuture.completedFuture(
-                    SmppResponse.routeDown("No active connections", info())));
+  private static boolean isWindowFull(final Throwable e) {
+    final var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    return cause instanceof SmppWindowFullException;
   }
 
-  private CompletableFuture<SmppResponse> submitInternal(
-      final SmppConnection conn, final SmppSmsMt sms) {
-    final var details = info() + ". " + conn.info();
-    final List<SubmitSm> pduList =
-        SubmitSm.create(
-            clock,
-            sms.sender(),
-            sms.msisdn(),
-            sms.message(),
-            sms.validityPeriod(),
-            conn.config.splitWithUdh(),
-            conn.config.useNetworkSpecificTonForShortCode());
-
-    final List<CompletableFuture<SubmitSmResp>> resps = pduList.stream().map(conn::submit).toList();
+  private boolean hasCapacityBesides(final SmppConnection conn, final List<SmppConnection> failed) {
+    for (final var c : activeConnections) {
+      if (c != conn
+          && (failed == null || !failed.contains(c))
+          && c.isWritable()
+          && c.getOpenWindowSlots() > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private List<SubmitSm> createPdus(final SmppConnection conn, final SmppSmsMt sms) {
+    return SubmitSm.create(
+        clock,
+        sms.sender(),
+        sms.msisdn(),
+        sms.message(),
+        sms.validityPeriod(),
+        conn.config.splitWithUdh(),
+        conn.config.useNetworkSpecificTonForShortCode(),
+        conn.config.submitEncoding(),
+        conn.config.nationalLanguages());
+  }
 
+  private static CompletableFuture<SmppResponse> merge(
+      final List<CompletableFuture<SubmitSmResp>> resps, final String details) {
     return CompletableFuture.allOf(resps.toArray(new CompletableFuture<?>[0]))
         .thenApply(
             v -> {
               final var responses = resps.stream().map(CompletableFuture::join).toList();
               return mergeStatuses(responses, details);
             })
-        .exceptionally(e -> SmppResponse.retriableError(e.getMessage(), details));
+        .exceptionally(e -> mapException(e, details));
+  }
+
+  static SmppResponse mapException(final Throwable e, final String details) {
+    final var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    if (cause instanceof SmppBackpressureException) {
+      return SmppResponse.backpressured(cause.getMessage(), details);
+    }
+    return SmppResponse.retriableError(e.getMessage(), details);
   }
 
   static SmppResponse mergeStatuses(final List<SubmitSmResp> resps, final String details) {
@@ -165,6 +575,25 @@ public class SmppConnectionGroup implements Closeable {
     return String.format("Group: %s", name);
   }
 
+  /** Whether any connection is active and not ejected by its circuit breaker, or takes probes. */
+  boolean isAvailable() {
+    return activeConnections.length > 0 || probingConnections.length > 0;
+  }
+
+  /** Whether any of the active or probing connections can take a submit right away. */
+  boolean hasCapacity() {
+    return hasCapacity(activeConnections) || hasCapacity(probingConnections);
+  }
+
+  private static boolean hasCapacity(final SmppConnection[] connections) {
+    for (final var conn : connections) {
+      if (conn.isWritable() && conn.getOpenWindowSlots() > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public long getNumberOfActiveConnections() {
     return connections.stream().filter(SmppConnection::isActive).count();
   }
@@ -172,10 +601,17 @@ public class SmppConnectionGroup implements Closeable {
   @Override
   public void close() {
     connections.forEach(SmppConnection::close);
+    if (ownsEventLoopGroup) {
+      eventLoopGroup.shutdownGracefully().syncUninterruptibly();
+    }
+    if (ownedHandlerExecutor != null) {
+      ownedHandlerExecutor.shutdown();
+    }
   }
 
   public boolean isHealthy() {
-    // are all connections up?
-    return getNumberOfActiveConnections() == connections.size();
+    // are all connections up, and none of them ejected by its circuit breaker?
+    return getNumberOfActiveConnections() == connections.size()
+        && connections.stream().noneMatch(SmppConnection::isEjected);
   }
 }
@@ -0,0 +1,30 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Moving averages of the submit_sm responses of a connection.
+ *
+ * @param latencyMillis the average time until the submit_sm_resp arrives
+ * @param errorRate the share of submits which are throttled, rejected because the SMSC is
+ *     overloaded, or not answered in time, from 0 to 1
+ */
+public record SmppConnectionStats(double latencyMillis, double errorRate) {}
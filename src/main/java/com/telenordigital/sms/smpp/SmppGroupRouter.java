@@ -0,0 +1,169 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Submits messages through several connection groups, e.g. one per aggregator. The groups are
+ * grouped in priority tiers, and the messages are spread by weight over the groups of the first
+ * tier which can take them.
+ *
+ * <p>A group without active connections, or whose connections are all ejected by their circuit
+ * breakers, is skipped without a round trip. A group whose connections are all saturated is skipped
+ * as well, and a message answered with {@link SmppResultCode#RETRIABLE_ERROR_ROUTE_DOWN} or {@link
+ * SmppResultCode#BACKPRESSURED} is submitted to the next group within the same call. When no group
+ * takes the message, it is answered with {@link SmppResultCode#BACKPRESSURED} if some group is up
+ * but saturated, and with {@link SmppResultCode#RETRIABLE_ERROR_ROUTE_DOWN} if none is up.
+ *
+ * <p>The groups are owned by the caller and not closed by the router.
+ */
+public class SmppGroupRouter {
+  private static final Logger LOG = LoggerFactory.getLogger(SmppGroupRouter.class);
+
+  private final String name;
+  // the routes by tier, in the order of priority
+  private final SmppRoute[][] tiers;
+
+  public SmppGroupRouter(final String name, final List<SmppRoute> routes) {
+    if (routes.isEmpty()) {
+      throw new IllegalArgumentException("At least one route is required");
+    }
+    this.name = name;
+    this.tiers =
+        routes.stream().collect(Collectors.groupingBy(SmppRoute::priority)).entrySet().stream()
+            .sorted(Comparator.comparingInt(e -> e.getKey()))
+            .map(e -> e.getValue().toArray(SmppRoute[]::new))
+            .toArray(SmppRoute[][]::new);
+  }
+
+  public CompletableFuture<SmppResponse> submit(final SmppSmsMt sms) {
+    return submit(sms, 0, null, null);
+  }
+
+  /**
+   * @param tried the routes which already failed the message, null if none did
+   * @param last the response of the last route tried
+   */
+  private CompletableFuture<SmppResponse> submit(
+      final SmppSmsMt sms, final int tier, final List<SmppRoute> tried, final SmppResponse last) {
+    for (int t = tier; t < tiers.length; t++) {
+      final var route = pick(tiers[t], tried);
+      if (route == null) {
+        continue;
+      }
+      final int current = t;
+      return route
+          .group()
+          .submit(sms)
+          .thenCompose(
+              r -> {
+                if (!failsOver(r)) {
+                  return CompletableFuture.completedFuture(r);
+                }
+                LOG.info("{} failed, failing over: {}", route.group().info(), r);
+                final var failed = tried == null ? new ArrayList<SmppRoute>() : tried;
+                failed.add(route);
+                return submit(sms, current, failed, r);
+              });
+    }
+    if (saturated(tried)) {
+      return CompletableFuture.completedFuture(
+          SmppResponse.backpressured("All available groups are saturated", info()));
+    }
+    return CompletableFuture.completedFuture(
+        last != null ? last : SmppResponse.routeDown("No available groups", info()));
+  }
+
+  /** Whether a group not tried yet is available, but skipped because it is saturated. */
+  private boolean saturated(final List<SmppRoute> tried) {
+    for (final var tier : tiers) {
+      for (final var route : tier) {
+        if ((tried == null || !tried.contains(route))
+            && route.group().isAvailable()
+            && !route.group().hasCapacity()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean failsOver(final SmppResponse response) {
+    return response.result() == SmppResultCode.RETRIABLE_ERROR_ROUTE_DOWN
+        || response.result() == SmppResultCode.BACKPRESSURED;
+  }
+
+  /** Picks one of the usable routes of the tier at random by weight, null if there is none. */
+  private static SmppRoute pick(final SmppRoute[] tier, final List<SmppRoute> tried) {
+    int total = 0;
+    for (final var route : tier) {
+      if (usable(route, tried)) {
+        total += route.weight();
+      }
+    }
+    if (total == 0) {
+      return null;
+    }
+    int r = ThreadLocalRandom.current().nextInt(total);
+    // the groups may change in between, then the last usable route is taken
+    SmppRoute picked = null;
+    for (final var route : tier) {
+      if (usable(route, tried)) {
+        picked = route;
+        r -= route.weight();
+        if (r < 0) {
+          break;
+        }
+      }
+    }
+    return picked;
+  }
+
+  private static boolean usable(final SmppRoute route, final List<SmppRoute> tried) {
+    return (tried == null || !tried.contains(route))
+        && route.group().isAvailable()
+        && route.group().hasCapacity();
+  }
+
+  /** Whether any of the groups can take messages. */
+  public boolean isHealthy() {
+    for (final var tier : tiers) {
+      for (final var route : tier) {
+        if (route.group().isAvailable()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  public String info() {
+    return String.format("Router: %s", name);
+  }
+}
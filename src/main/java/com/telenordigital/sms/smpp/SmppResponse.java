@@ -49,6 +49,10 @@ public record SmppResponse(
         SmppResultCode.RETRIABLE_ERROR_ROUTE_DOWN, null, message, details, null);
   }
 
+  public static SmppResponse backpressured(final String message, final String details) {
+    return new SmppResponse(SmppResultCode.BACKPRESSURED, null, message, details, null);
+  }
+
   public static SmppResponse failure(final String message, final String details) {
     return new SmppResponse(SmppResultCode.GENERAL_FAILURE, null, message, details, null);
   }
@@ -30,5 +30,7 @@ public enum SmppResultCode {
   RETRIABLE_ERROR_ROUTE_DOWN,
   INVALID_SENDER,
   SUBSCRIBER_ABSENT,
-  RATE_LIMITED
+  RATE_LIMITED,
+  // the connections are not able to keep up with the submit rate, try again later
+  BACKPRESSURED
 }
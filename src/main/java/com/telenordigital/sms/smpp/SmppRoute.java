@@ -0,0 +1,44 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Objects;
+
+/**
+ * A group of connections and how {@link SmppGroupRouter} prefers it.
+ *
+ * @param priority groups with a lower priority are used first, the next tier only when none of them
+ *     can take the message
+ * @param weight the share of the messages of its tier the group gets
+ */
+public record SmppRoute(SmppConnectionGroup group, int priority, int weight) {
+
+  public SmppRoute {
+    Objects.requireNonNull(group);
+    if (weight < 1) {
+      throw new IllegalArgumentException("Weight must be >= 1");
+    }
+  }
+
+  public SmppRoute(final SmppConnectionGroup group, final int priority) {
+    this(group, priority, 1);
+  }
+}
@@ -20,6 +20,15 @@ package com.telenordigital.sms.smpp;
  * #L%
  */
 
+import com.telenordigital.sms.smpp.config.SmppConnectionConfig;
+import com.telenordigital.sms.smpp.pdu.SubmitSm;
 import java.time.Duration;
 
-public record SmppSmsMt(String sender, String msisdn, String message, Duration validityPeriod) {}
+public record SmppSmsMt(String sender, String msisdn, String message, Duration validityPeriod) {
+
+  /** The number of SMS the handset receives when the message is sent on a bind with the config. */
+  public int parts(final SmppConnectionConfig config) {
+    return SubmitSm.countParts(
+        message, config.splitWithUdh(), config.submitEncoding(), config.nationalLanguages());
+  }
+}
@@ -0,0 +1,159 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.telenordigital.sms.smpp.config.Transport;
+import com.telenordigital.sms.smpp.config.TransportConfig;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.IoEventLoopGroup;
+import io.netty.channel.IoHandlerFactory;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollIoHandler;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.uring.IoUring;
+import io.netty.channel.uring.IoUringChannelOption;
+import io.netty.channel.uring.IoUringIoHandler;
+import io.netty.channel.uring.IoUringSocketChannel;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The I/O transports a connection can run on. The native ones are available only if the matching
+ * netty-transport-native-* jar for the platform is on the class path.
+ */
+enum SmppTransport {
+  EPOLL {
+    @Override
+    boolean isAvailable() {
+      return Epoll.isAvailable();
+    }
+
+    @Override
+    IoHandlerFactory ioHandlerFactory() {
+      return EpollIoHandler.newFactory();
+    }
+
+    @Override
+    Class<? extends SocketChannel> channelClass() {
+      return EpollSocketChannel.class;
+    }
+
+    @Override
+    void configure(final Bootstrap bootstrap, final TransportConfig config) {
+      // epoll always runs in edge-triggered mode since Netty 4.2
+      if (config.tcpUserTimeoutMillis() > 0) {
+        bootstrap.option(EpollChannelOption.TCP_USER_TIMEOUT, config.tcpUserTimeoutMillis());
+      }
+    }
+  },
+  IO_URING {
+    @Override
+    boolean isAvailable() {
+      return IoUring.isAvailable();
+    }
+
+    @Override
+    IoHandlerFactory ioHandlerFactory() {
+      return IoUringIoHandler.newFactory();
+    }
+
+    @Override
+    Class<? extends SocketChannel> channelClass() {
+      return IoUringSocketChannel.class;
+    }
+
+    @Override
+    void configure(final Bootstrap bootstrap, final TransportConfig config) {
+      if (config.tcpUserTimeoutMillis() > 0) {
+        bootstrap.option(IoUringChannelOption.TCP_USER_TIMEOUT, config.tcpUserTimeoutMillis());
+      }
+    }
+  },
+  NIO {
+    @Override
+    boolean isAvailable() {
+      return true;
+    }
+
+    @Override
+    IoHandlerFactory ioHandlerFactory() {
+      return NioIoHandler.newFactory();
+    }
+
+    @Override
+    Class<? extends SocketChannel> channelClass() {
+      return NioSocketChannel.class;
+    }
+
+    @Override
+    void configure(final Bootstrap bootstrap, final TransportConfig config) {
+      if (config.tcpUserTimeoutMillis() > 0) {
+        LOG.warn("TCP user timeout is not supported by the NIO transport, ignoring it");
+      }
+    }
+  };
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  abstract boolean isAvailable();
+
+  abstract IoHandlerFactory ioHandlerFactory();
+
+  abstract Class<? extends SocketChannel> channelClass();
+
+  abstract void configure(Bootstrap bootstrap, TransportConfig config);
+
+  static SmppTransport resolve(final Transport type) {
+    return switch (type) {
+      case AUTO ->
+          Arrays.stream(values()).filter(SmppTransport::isAvailable).findFirst().orElse(NIO);
+      case NIO -> NIO;
+      case EPOLL -> ensureAvailable(EPOLL, Epoll.unavailabilityCause());
+      case IO_URING -> ensureAvailable(IO_URING, IoUring.unavailabilityCause());
+    };
+  }
+
+  private static SmppTransport ensureAvailable(
+      final SmppTransport transport, final Throwable cause) {
+    if (!transport.isAvailable()) {
+      throw new IllegalArgumentException(transport + " transport is not available", cause);
+    }
+    return transport;
+  }
+
+  /** Finds the transport an existing event loop group has been created for. */
+  static SmppTransport of(final IoEventLoopGroup group) {
+    if (group.isIoType(NioIoHandler.class)) {
+      return NIO;
+    } else if (group.isIoType(EpollIoHandler.class)) {
+      return EPOLL;
+    } else if (group.isIoType(IoUringIoHandler.class)) {
+      return IO_URING;
+    }
+    throw new IllegalArgumentException("Unsupported event loop group: " + group);
+  }
+}
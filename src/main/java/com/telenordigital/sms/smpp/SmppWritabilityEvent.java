@@ -0,0 +1,31 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Fired when a connection stops or resumes accepting submits because of its outbound buffer.
+ *
+ * @param connection the name of the connection which changed its state
+ * @param writable whether the connection accepts submits
+ * @param writableConnections the number of active connections in the group accepting submits. A
+ *     producer should pause when it drops to 0
+ */
+public record SmppWritabilityEvent(String connection, boolean writable, long writableConnections) {}
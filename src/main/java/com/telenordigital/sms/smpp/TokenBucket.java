@@ -0,0 +1,80 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * A token bucket refilled continuously at a fixed rate, so requests are admitted evenly spaced
+ * rather than in bursts at second boundaries. It is used on the event loop only, {@link #rate()}
+ * may be read from any thread.
+ */
+class TokenBucket {
+  private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+  private final double burst;
+  private volatile double rate;
+  private double tokens;
+  private long lastRefillNanos;
+
+  TokenBucket(final double rate, final int burst, final long nowNanos) {
+    this.rate = rate;
+    this.burst = burst;
+    this.tokens = burst;
+    this.lastRefillNanos = nowNanos;
+  }
+
+  boolean tryAcquire(final long nowNanos) {
+    return tryAcquire(nowNanos, 1);
+  }
+
+  /**
+   * Takes the permits once a single token is available. The bucket may go into debt, which later
+   * acquires pay for, so a batch larger than the burst is not blocked forever.
+   */
+  boolean tryAcquire(final long nowNanos, final int permits) {
+    refill(nowNanos);
+    if (tokens >= 1) {
+      tokens -= permits;
+      return true;
+    }
+    return false;
+  }
+
+  /** The time until a token is available, 0 if one is available now. */
+  long nanosUntilAvailable(final long nowNanos) {
+    refill(nowNanos);
+    return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * NANOS_PER_SECOND / rate);
+  }
+
+  double rate() {
+    return rate;
+  }
+
+  void setRate(final double rate, final long nowNanos) {
+    // tokens earned so far are accounted at the old rate
+    refill(nowNanos);
+    this.rate = rate;
+  }
+
+  private void refill(final long nowNanos) {
+    tokens = Math.min(burst, tokens + (nowNanos - lastRefillNanos) * rate / NANOS_PER_SECOND);
+    lastRefillNanos = nowNanos;
+  }
+}
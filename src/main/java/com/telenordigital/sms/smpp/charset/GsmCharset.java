@@ -36,26 +36,25 @@ package com.telenordigital.sms.smpp.charset;
  * %%Ignore-License
  */
 
+import io.netty.buffer.ByteBuf;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
-import java.util.HashMap;
+import java.util.Arrays;
 
 @SuppressWarnings({"java:S3776", "java:S135"})
 public class GsmCharset extends Charset {
   public static final String CHARSET_NAME = "X-Gsm7Bit";
   public static final GsmCharset GSM = new GsmCharset();
 
-  // HashMap's used for encoding and decoding
-  private static final HashMap<Character, Byte> defaultEncodeMap = new HashMap<>();
-  private static final HashMap<Byte, Character> defaultDecodeMap = new HashMap<>();
-  private static final HashMap<Character, Byte> extEncodeMap = new HashMap<>();
-  private static final HashMap<Byte, Character> extDecodeMap = new HashMap<>();
+  public static final byte ESCAPE = 0x1b;
+  private static final byte CARRIAGE_RETURN = 0x0d;
+  private static final byte UNKNOWN = 0x3f;
 
-  // Data to populate the hashmaps with
+  // Data to populate the tables with
   private static final Object[][] gsmCharacters = {
     {'@', (byte) 0x00},
     {'£', (byte) 0x01},
@@ -201,31 +200,204 @@ public class GsmCharset extends Charset {
     {'€', (byte) 0x65}
   };
 
-  // static section that populates the encode and decode HashMap objects
-  static {
-    // default alphabet
-    for (final Object[] map : gsmCharacters) {
-      defaultEncodeMap.put((Character) map[0], (Byte) map[1]);
-      defaultDecodeMap.put((Byte) map[1], (Character) map[0]);
-    }
+  // primitive lookup tables, the lookups neither box nor hash
+  static final SeptetTable DEFAULT_TABLE = new SeptetTable(gsmCharacters);
+  static final SeptetTable EXTENSION_TABLE = new SeptetTable(gsmExtensionCharacters);
 
-    // extended alphabet
-    for (final Object[] map : gsmExtensionCharacters) {
-      extEncodeMap.put((Character) map[0], (Byte) map[1]);
-      extDecodeMap.put((Byte) map[1], (Character) map[0]);
-    }
+  /** Whether the character is in the default alphabet, without the extension table. */
+  public boolean canRepresent(final char c) {
+    return DEFAULT_TABLE.septet(c) != SeptetTable.NONE;
   }
 
-  public boolean canRepresent(final String string) {
-    for (int i = 0; i < string.length(); i++) {
-      final var c = string.charAt(i);
-      if (!defaultEncodeMap.containsKey(c)) {
+  /** Whether all the characters are in the default alphabet, without the extension table. */
+  public boolean canRepresent(final CharSequence text) {
+    for (int i = 0; i < text.length(); i++) {
+      if (DEFAULT_TABLE.septet(text.charAt(i)) == SeptetTable.NONE) {
         return false;
       }
     }
     return true;
   }
 
+  /**
+   * The number of septets the text takes with the default alphabet and the extension table, an
+   * extension character taking two, or -1 if some character is in neither.
+   */
+  public int countSeptets(final CharSequence text) {
+    int septets = 0;
+    for (int i = 0; i < text.length(); i++) {
+      final char c = text.charAt(i);
+      if (DEFAULT_TABLE.septet(c) != SeptetTable.NONE) {
+        septets++;
+      } else if (EXTENSION_TABLE.septet(c) != SeptetTable.NONE) {
+        septets += 2;
+      } else {
+        return -1;
+      }
+    }
+    return septets;
+  }
+
+  /**
+   * Writes the text one septet per byte, extension characters as an escape and their septet, and
+   * characters in neither table as '?'.
+   *
+   * @return the number of bytes written
+   */
+  public int encode(final CharSequence text, final ByteBuf buf) {
+    final int start = buf.writerIndex();
+    for (int i = 0; i < text.length(); i++) {
+      final char c = text.charAt(i);
+      final int septet = DEFAULT_TABLE.septet(c);
+      if (septet != SeptetTable.NONE) {
+        buf.writeByte(septet);
+      } else {
+        final int extension = EXTENSION_TABLE.septet(c);
+        if (extension != SeptetTable.NONE) {
+          buf.writeByte(ESCAPE);
+          buf.writeByte(extension);
+        } else {
+          buf.writeByte(UNKNOWN);
+        }
+      }
+    }
+    return buf.writerIndex() - start;
+  }
+
+  /** Decodes the readable bytes of the buffer, one septet per byte, without consuming them. */
+  public String decode(final ByteBuf buf) {
+    final var chars = new char[buf.readableBytes()];
+    int length = 0;
+    final int end = buf.writerIndex();
+    for (int i = buf.readerIndex(); i < end; i++) {
+      final byte b = buf.getByte(i);
+      if (b == ESCAPE) {
+        if (++i < end) {
+          chars[length++] = extension(buf.getByte(i));
+        }
+      } else {
+        chars[length++] = character(b);
+      }
+    }
+    return new String(chars, 0, length);
+  }
+
+  /** Decodes the bytes, one septet per byte. */
+  public String decode(final byte[] bytes, final int offset, final int length) {
+    final var chars = new char[length];
+    int count = 0;
+    final int end = offset + length;
+    for (int i = offset; i < end; i++) {
+      final byte b = bytes[i];
+      if (b == ESCAPE) {
+        if (++i < end) {
+          chars[count++] = extension(bytes[i]);
+        }
+      } else {
+        chars[count++] = character(b);
+      }
+    }
+    return new String(chars, 0, count);
+  }
+
+  /**
+   * Packs septets, one per byte, into octets as in 3GPP TS 23.038.
+   *
+   * @param paddingBits zero bits before the first septet, which align it after a user data header
+   */
+  public static byte[] pack(
+      final byte[] septets, final int offset, final int length, final int paddingBits) {
+    final int last = length == 0 ? -1 : septets[offset + length - 1];
+    final var packed = new byte[packedLength(paddingBits + length * 7, last)];
+    int bit = paddingBits;
+    for (int i = offset; i < offset + length; i++) {
+      putSeptet(packed, 0, bit, septets[i]);
+      bit += 7;
+    }
+    fillPadding(packed, 0, bit, last);
+    return packed;
+  }
+
+  /**
+   * The octets taking the bits of packed septets, with the carriage return {@link #fillPadding}
+   * adds after a last septet which is a carriage return ending on an octet boundary.
+   */
+  public static int packedLength(final int bits, final int lastSeptet) {
+    return (bits + (doubleCarriageReturn(bits, lastSeptet) ? 7 : 0) + 7) / 8;
+  }
+
+  // a carriage return ending on an octet boundary would read as the padding of seven spare bits
+  private static boolean doubleCarriageReturn(final int bits, final int lastSeptet) {
+    return lastSeptet == CARRIAGE_RETURN && bits % 8 == 0;
+  }
+
+  // ORs the septet into the octets from offset at the bit position
+  static void putSeptet(final byte[] packed, final int offset, final int bit, final int septet) {
+    final int index = offset + (bit >>> 3);
+    final int shift = bit & 7;
+    packed[index] |= (byte) ((septet & 0x7f) << shift);
+    if (shift > 1) {
+      // the septet continues in the next octet
+      packed[index + 1] |= (byte) ((septet & 0x7f) >>> (8 - shift));
+    }
+  }
+
+  // Ends the packed septets as in 3GPP TS 23.038 6.1.2.3.1: a last carriage return ending on an
+  // octet boundary is followed by another one, so it is not taken for padding, and seven spare bits
+  // in the last octet, which would read as a trailing '@', are filled with a carriage return.
+  // Returns the number of octets the bits take
+  static int fillPadding(
+      final byte[] packed, final int offset, final int bits, final int lastSeptet) {
+    int end = bits;
+    if (doubleCarriageReturn(bits, lastSeptet)) {
+      putSeptet(packed, offset, end, CARRIAGE_RETURN);
+      end += 7;
+    }
+    final int octets = (end + 7) / 8;
+    if (octets * 8 - end == 7) {
+      packed[offset + octets - 1] |= (byte) (CARRIAGE_RETURN << 1);
+    }
+    return octets;
+  }
+
+  /**
+   * Unpacks octets into septets, one per byte, the reverse of {@link #pack}. A carriage return in
+   * the last seven bits of the octets is padding and dropped. A doubled last carriage return is
+   * kept, it cannot be told from two real ones and 3GPP TS 23.038 6.1.2.3.1 has the receiver ignore
+   * it.
+   */
+  public static byte[] unpack(
+      final byte[] packed, final int offset, final int length, final int paddingBits) {
+    final int bits = length * 8 - paddingBits;
+    int count = bits / 7;
+    final var septets = new byte[count];
+    int bit = paddingBits;
+    for (int i = 0; i < count; i++) {
+      final int index = offset + (bit >>> 3);
+      final int shift = bit & 7;
+      int septet = (packed[index] & 0xff) >>> shift;
+      if (shift > 1) {
+        septet |= (packed[index + 1] & 0xff) << (8 - shift);
+      }
+      septets[i] = (byte) (septet & 0x7f);
+      bit += 7;
+    }
+    if (count > 0 && bits % 7 == 0 && septets[count - 1] == CARRIAGE_RETURN) {
+      return Arrays.copyOf(septets, count - 1);
+    }
+    return septets;
+  }
+
+  private static char character(final byte septet) {
+    final int c = DEFAULT_TABLE.character(septet);
+    return c == SeptetTable.NONE ? '?' : (char) c;
+  }
+
+  private static char extension(final byte septet) {
+    final int c = EXTENSION_TABLE.character(septet);
+    return c == SeptetTable.NONE ? '?' : (char) c;
+  }
+
   public GsmCharset() {
     this(CHARSET_NAME, null);
   }
@@ -288,11 +460,11 @@ public class GsmCharset extends Charset {
         char ch = cb.get();
 
         // first check the default alphabet
-        Byte b = defaultEncodeMap.get(ch);
-        if (b == null) {
+        int b = DEFAULT_TABLE.septet(ch);
+        if (b == SeptetTable.NONE) {
           // check extended alphabet
-          b = extEncodeMap.get(ch);
-          if (b != null) {
+          b = EXTENSION_TABLE.septet(ch);
+          if (b != SeptetTable.NONE) {
             // since the extended character set takes two bytes
             // we have to check that there is enough space left
             if (bb.remaining() < 2) {
@@ -302,13 +474,13 @@ public class GsmCharset extends Charset {
               break;
             }
             // all ok, add it to the buffer
-            bb.put((byte) 0x1b);
+            bb.put(ESCAPE);
           } else {
             // no match found, send a ?
-            b = (byte) 0x3F;
+            b = UNKNOWN;
           }
         }
-        bb.put(b);
+        bb.put((byte) b);
       }
       return cr;
     }
@@ -336,29 +508,12 @@ public class GsmCharset extends Charset {
           cr = CoderResult.OVERFLOW;
           break;
         }
-        byte b = bb.get();
-
-        // first check the default alphabet
-        Character s = defaultDecodeMap.get(b);
-        if (s != null) {
-          char ch = s;
-          if (ch != '\u001B') {
-            cb.put(ch);
-          } else {
-            // check the extended alphabet
-            if (bb.hasRemaining()) {
-              b = bb.get();
-              s = extDecodeMap.get(b);
-              if (s != null) {
-                ch = s;
-                cb.put(ch);
-              } else {
-                cb.put('?');
-              }
-            }
-          }
-        } else {
-          cb.put('?');
+        final byte b = bb.get();
+        if (b != ESCAPE) {
+          cb.put(character(b));
+        } else if (bb.hasRemaining()) {
+          // the next septet is from the extended alphabet
+          cb.put(extension(bb.get()));
         }
       }
       return cr;
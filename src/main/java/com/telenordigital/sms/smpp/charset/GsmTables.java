@@ -0,0 +1,200 @@
+package com.telenordigital.sms.smpp.charset;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * The alphabet and the extension table a message is encoded with, the GSM defaults or the shift
+ * tables of a national language.
+ *
+ * @param lockingShift the language replacing the default alphabet, null keeps it
+ * @param singleShift the language replacing the extension table, null keeps it
+ */
+public record GsmTables(NationalShiftTables lockingShift, NationalShiftTables singleShift) {
+  public static final GsmTables DEFAULT = new GsmTables(null, null);
+
+  private static final byte SINGLE_SHIFT_IEI = 0x24;
+  private static final byte LOCKING_SHIFT_IEI = 0x25;
+
+  public GsmTables {
+    if (lockingShift != null && !lockingShift.hasLockingShift()) {
+      throw new IllegalArgumentException(lockingShift + " has no locking shift table");
+    }
+  }
+
+  /**
+   * The number of septets the character takes, two for a character in the extension table, or 0 if
+   * it is in neither table.
+   */
+  public int septets(final char c) {
+    if (alphabet().septet(c) != SeptetTable.NONE) {
+      return 1;
+    }
+    return extension().septet(c) != SeptetTable.NONE ? 2 : 0;
+  }
+
+  /**
+   * The number of septets the text takes, a character in the extension table taking two, or -1 if
+   * some character is in neither table.
+   */
+  public int countSeptets(final CharSequence text) {
+    final SeptetTable alphabet = alphabet();
+    final SeptetTable extension = extension();
+    int septets = 0;
+    for (int i = 0; i < text.length(); i++) {
+      final char c = text.charAt(i);
+      if (alphabet.septet(c) != SeptetTable.NONE) {
+        septets++;
+      } else if (extension.septet(c) != SeptetTable.NONE) {
+        septets += 2;
+      } else {
+        return -1;
+      }
+    }
+    return septets;
+  }
+
+  /**
+   * Writes the text one septet per byte, characters in the extension table as an escape and their
+   * septet, and characters in neither table as '?'.
+   *
+   * @return the offset after the last septet written
+   */
+  public int encode(final CharSequence text, final byte[] septets, final int offset) {
+    return encode(text, 0, text.length(), septets, offset);
+  }
+
+  /**
+   * Writes the characters from start to end one septet per byte.
+   *
+   * @return the offset after the last septet written
+   * @see #encode(CharSequence, byte[], int)
+   */
+  public int encode(
+      final CharSequence text,
+      final int start,
+      final int end,
+      final byte[] septets,
+      final int offset) {
+    final SeptetTable alphabet = alphabet();
+    final SeptetTable extension = extension();
+    int position = offset;
+    for (int i = start; i < end; i++) {
+      final char c = text.charAt(i);
+      final int septet = alphabet.septet(c);
+      if (septet != SeptetTable.NONE) {
+        septets[position++] = (byte) septet;
+      } else {
+        final int escaped = extension.septet(c);
+        if (escaped != SeptetTable.NONE) {
+          septets[position++] = GsmCharset.ESCAPE;
+          septets[position++] = (byte) escaped;
+        } else {
+          septets[position++] = '?';
+        }
+      }
+    }
+    return position;
+  }
+
+  /**
+   * Writes the characters from start to end as packed septets, like {@link GsmCharset#pack} without
+   * the intermediate septets.
+   *
+   * @param paddingBits zero bits before the first septet, which align it after a user data header
+   * @return the offset after the last octet written
+   */
+  public int encodePacked(
+      final CharSequence text,
+      final int start,
+      final int end,
+      final byte[] packed,
+      final int offset,
+      final int paddingBits) {
+    final SeptetTable alphabet = alphabet();
+    final SeptetTable extension = extension();
+    int bit = paddingBits;
+    int last = -1;
+    for (int i = start; i < end; i++) {
+      final char c = text.charAt(i);
+      final int septet = alphabet.septet(c);
+      if (septet != SeptetTable.NONE) {
+        last = septet;
+      } else {
+        final int escaped = extension.septet(c);
+        if (escaped != SeptetTable.NONE) {
+          GsmCharset.putSeptet(packed, offset, bit, GsmCharset.ESCAPE);
+          bit += 7;
+          last = escaped;
+        } else {
+          last = '?';
+        }
+      }
+      GsmCharset.putSeptet(packed, offset, bit, last);
+      bit += 7;
+    }
+    return offset + GsmCharset.fillPadding(packed, offset, bit, last);
+  }
+
+  /**
+   * The octets {@link #encodePacked} writes for the characters from start to end.
+   *
+   * @param septets the septets of the characters
+   */
+  public int packedLength(
+      final CharSequence text,
+      final int start,
+      final int end,
+      final int septets,
+      final int paddingBits) {
+    int last = -1;
+    if (end > start) {
+      final char c = text.charAt(end - 1);
+      final int septet = alphabet().septet(c);
+      last = septet != SeptetTable.NONE ? septet : extension().septet(c);
+    }
+    return GsmCharset.packedLength(paddingBits + septets * 7, last);
+  }
+
+  /** The length of the shift information elements in the user data header. */
+  public int udhLength() {
+    return (lockingShift == null ? 0 : 3) + (singleShift == null ? 0 : 3);
+  }
+
+  /** Writes the shift information elements of the user data header. */
+  public void writeUdh(final ByteBuffer buf) {
+    if (singleShift != null) {
+      buf.put(SINGLE_SHIFT_IEI).put((byte) 1).put(singleShift.identifier());
+    }
+    if (lockingShift != null) {
+      buf.put(LOCKING_SHIFT_IEI).put((byte) 1).put(lockingShift.identifier());
+    }
+  }
+
+  private SeptetTable alphabet() {
+    return lockingShift == null ? GsmCharset.DEFAULT_TABLE : lockingShift.lockingShift();
+  }
+
+  private SeptetTable extension() {
+    return singleShift == null ? GsmCharset.EXTENSION_TABLE : singleShift.singleShift();
+  }
+}
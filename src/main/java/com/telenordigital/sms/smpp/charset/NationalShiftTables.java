@@ -0,0 +1,70 @@
+package com.telenordigital.sms.smpp.charset;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * The 3GPP TS 23.038 shift tables of the national languages. A table replaces the default alphabet
+ * (locking shift) or the extension table (single shift) and is signalled in the user data header.
+ */
+public enum NationalShiftTables {
+  TURKISH(1, ShiftTables.TURKISH_LOCKING, ShiftTables.TURKISH_SINGLE),
+  // Spanish has a single shift table only
+  SPANISH(2, null, ShiftTables.SPANISH_SINGLE),
+  PORTUGUESE(3, ShiftTables.PORTUGUESE_LOCKING, ShiftTables.PORTUGUESE_SINGLE);
+
+  private final byte identifier;
+  private final SeptetTable lockingShift;
+  private final SeptetTable singleShift;
+
+  NationalShiftTables(
+      final int identifier, final SeptetTable lockingShift, final SeptetTable singleShift) {
+    this.identifier = (byte) identifier;
+    this.lockingShift = lockingShift;
+    this.singleShift = singleShift;
+  }
+
+  /** The tables of the national language identifier, or null if there are none. */
+  public static NationalShiftTables of(final byte identifier) {
+    for (final var tables : values()) {
+      if (tables.identifier == identifier) {
+        return tables;
+      }
+    }
+    return null;
+  }
+
+  /** The national language identifier of the shift information elements. */
+  public byte identifier() {
+    return identifier;
+  }
+
+  public boolean hasLockingShift() {
+    return lockingShift != null;
+  }
+
+  SeptetTable lockingShift() {
+    return lockingShift;
+  }
+
+  SeptetTable singleShift() {
+    return singleShift;
+  }
+}
@@ -0,0 +1,82 @@
+package com.telenordigital.sms.smpp.charset;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+
+/**
+ * Maps characters to GSM 03.38 septets and back without boxing or hashing. Characters are looked up
+ * in 256-entry pages, allocated only for the few Unicode blocks an alphabet uses.
+ */
+final class SeptetTable {
+  static final int NONE = -1;
+  private static final char NO_CHAR = '\uFFFF';
+
+  private final byte[][] pages = new byte[256][];
+  private final char[] chars = new char[128];
+
+  SeptetTable(final Object[][] mapping) {
+    Arrays.fill(chars, NO_CHAR);
+    for (final Object[] entry : mapping) {
+      final char c = (Character) entry[0];
+      final byte septet = (Byte) entry[1];
+      var page = pages[c >>> 8];
+      if (page == null) {
+        page = new byte[256];
+        Arrays.fill(page, (byte) NONE);
+        pages[c >>> 8] = page;
+      }
+      page[c & 0xff] = septet;
+      chars[septet] = c;
+    }
+  }
+
+  /** A table of the 128 characters of the septets in order, '\uFFFF' where there is none. */
+  static SeptetTable of(final String characters) {
+    if (characters.length() != 128) {
+      throw new IllegalArgumentException("Expected 128 characters, got " + characters.length());
+    }
+    final var mapping = new Object[128][];
+    int count = 0;
+    for (int septet = 0; septet < 128; septet++) {
+      final char c = characters.charAt(septet);
+      if (c != NO_CHAR) {
+        mapping[count++] = new Object[] {c, (byte) septet};
+      }
+    }
+    return new SeptetTable(Arrays.copyOf(mapping, count));
+  }
+
+  /** The septet of the character, or {@link #NONE}. */
+  int septet(final char c) {
+    final byte[] page = pages[c >>> 8];
+    return page == null ? NONE : page[c & 0xff];
+  }
+
+  /** The character of the septet, or {@link #NONE}. */
+  int character(final int septet) {
+    if (septet < 0 || septet > 0x7f) {
+      return NONE;
+    }
+    final char c = chars[septet];
+    return c == NO_CHAR ? NONE : c;
+  }
+}
@@ -0,0 +1,129 @@
+package com.telenordigital.sms.smpp.charset;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/** The 3GPP TS 23.038 national language shift tables. */
+final class ShiftTables {
+  private ShiftTables() {}
+
+  // A.3.1, the Turkish locking shift table
+  static final SeptetTable TURKISH_LOCKING =
+      SeptetTable.of(
+          "@£$¥€éùıòÇ\nĞğ\rÅåΔ_ΦΓΛΩΠΨΣΘΞ\uFFFFŞşßÉ !\"#¤%&'()*+,-./0123456789:;<=>?"
+              + "İABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§çabcdefghijklmnopqrstuvwxyzäöñüà");
+
+  // A.3.3, the Portuguese locking shift table
+  static final SeptetTable PORTUGUESE_LOCKING =
+      SeptetTable.of(
+          "@£$¥êéúíóç\nÔô\rÁáΔ_ªÇÀ∞^\\€Ó|\uFFFFÂâÊÉ !\"#º%&'()*+,-./0123456789:;<=>?"
+              + "ÍABCDEFGHIJKLMNOPQRSTUVWXYZÃÕÚÜ§~abcdefghijklmnopqrstuvwxyzãõ`üà");
+
+  // A.2.1, the Turkish single shift table
+  static final SeptetTable TURKISH_SINGLE =
+      new SeptetTable(
+          new Object[][] {
+            {'\f', (byte) 0x0a},
+            {'^', (byte) 0x14},
+            {'{', (byte) 0x28},
+            {'}', (byte) 0x29},
+            {'\\', (byte) 0x2f},
+            {'[', (byte) 0x3c},
+            {'~', (byte) 0x3d},
+            {']', (byte) 0x3e},
+            {'|', (byte) 0x40},
+            {'Ğ', (byte) 0x47},
+            {'İ', (byte) 0x49},
+            {'Ş', (byte) 0x53},
+            {'ç', (byte) 0x63},
+            {'€', (byte) 0x65},
+            {'ğ', (byte) 0x67},
+            {'ı', (byte) 0x69},
+            {'ş', (byte) 0x73}
+          });
+
+  // A.2.2, the Spanish single shift table
+  static final SeptetTable SPANISH_SINGLE =
+      new SeptetTable(
+          new Object[][] {
+            {'ç', (byte) 0x09},
+            {'\f', (byte) 0x0a},
+            {'^', (byte) 0x14},
+            {'{', (byte) 0x28},
+            {'}', (byte) 0x29},
+            {'\\', (byte) 0x2f},
+            {'[', (byte) 0x3c},
+            {'~', (byte) 0x3d},
+            {']', (byte) 0x3e},
+            {'|', (byte) 0x40},
+            {'Á', (byte) 0x41},
+            {'Í', (byte) 0x49},
+            {'Ó', (byte) 0x4f},
+            {'Ú', (byte) 0x55},
+            {'á', (byte) 0x61},
+            {'€', (byte) 0x65},
+            {'í', (byte) 0x69},
+            {'ó', (byte) 0x6f},
+            {'ú', (byte) 0x75}
+          });
+
+  // A.2.3, the Portuguese single shift table
+  static final SeptetTable PORTUGUESE_SINGLE =
+      new SeptetTable(
+          new Object[][] {
+            {'ê', (byte) 0x05},
+            {'ç', (byte) 0x09},
+            {'\f', (byte) 0x0a},
+            {'Ô', (byte) 0x0b},
+            {'ô', (byte) 0x0c},
+            {'Á', (byte) 0x0e},
+            {'á', (byte) 0x0f},
+            {'Φ', (byte) 0x12},
+            {'Γ', (byte) 0x13},
+            {'^', (byte) 0x14},
+            {'Ω', (byte) 0x15},
+            {'Π', (byte) 0x16},
+            {'Ψ', (byte) 0x17},
+            {'Σ', (byte) 0x18},
+            {'Θ', (byte) 0x19},
+            {'Ê', (byte) 0x1f},
+            {'{', (byte) 0x28},
+            {'}', (byte) 0x29},
+            {'\\', (byte) 0x2f},
+            {'[', (byte) 0x3c},
+            {'~', (byte) 0x3d},
+            {']', (byte) 0x3e},
+            {'|', (byte) 0x40},
+            {'À', (byte) 0x41},
+            {'Í', (byte) 0x49},
+            {'Ó', (byte) 0x4f},
+            {'Ú', (byte) 0x55},
+            {'Ã', (byte) 0x5b},
+            {'Õ', (byte) 0x5c},
+            {'Â', (byte) 0x61},
+            {'€', (byte) 0x65},
+            {'í', (byte) 0x69},
+            {'ó', (byte) 0x6f},
+            {'ú', (byte) 0x75},
+            {'ã', (byte) 0x7b},
+            {'õ', (byte) 0x7c},
+            {'â', (byte) 0x7f}
+          });
+}
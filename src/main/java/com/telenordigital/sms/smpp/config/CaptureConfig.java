@@ -0,0 +1,52 @@
+package com.telenordigital.sms.smpp.config;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+public record CaptureConfig(
+    // directory the capture files are written to
+    Path directory,
+    // fraction of the request/response pairs to capture, between 0.0 and 1.0
+    double sampleRate,
+    // a new file is started when the current one would grow beyond this size
+    long maxFileBytes,
+    // the oldest files are deleted when there are more than this many
+    int maxFiles) {
+
+  public CaptureConfig {
+    Objects.requireNonNull(directory);
+    if (sampleRate < 0.0 || sampleRate > 1.0) {
+      throw new IllegalArgumentException("Sample rate must be between 0.0 and 1.0");
+    }
+    if (maxFileBytes < 1024) {
+      throw new IllegalArgumentException("Max file size must be >= 1024 bytes");
+    }
+    if (maxFiles < 1) {
+      throw new IllegalArgumentException("Max files must be >= 1");
+    }
+  }
+
+  public CaptureConfig(final Path directory, final double sampleRate) {
+    this(directory, sampleRate, 64L * 1024 * 1024, 10);
+  }
+}
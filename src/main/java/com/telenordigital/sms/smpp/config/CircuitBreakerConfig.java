@@ -0,0 +1,52 @@
+package com.telenordigital.sms.smpp.config;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+public record CircuitBreakerConfig(
+    // consecutive failed submits opening the breaker: expired requests and system error or
+    // message queue full statuses
+    int failureThreshold,
+    // a window without any response for this long opens the breaker at once
+    int stallMillis,
+    // how long an open breaker keeps the connection out of routing before probing it
+    int openMillis,
+    // successful probe responses needed to close the breaker again
+    int halfOpenProbes) {
+
+  public CircuitBreakerConfig {
+    if (failureThreshold < 1) {
+      throw new IllegalArgumentException("Failure threshold must be >= 1");
+    }
+    if (stallMillis < 1) {
+      throw new IllegalArgumentException("Stall time must be >= 1ms");
+    }
+    if (openMillis < 1) {
+      throw new IllegalArgumentException("Open time must be >= 1ms");
+    }
+    if (halfOpenProbes < 1) {
+      throw new IllegalArgumentException("Half-open probes must be >= 1");
+    }
+  }
+
+  public CircuitBreakerConfig() {
+    this(5, 5000, 5000, 3);
+  }
+}
@@ -0,0 +1,52 @@
+package com.telenordigital.sms.smpp.config;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+public record CongestionConfig(
+    // the rate is multiplied by this factor when the SMSC throttles us
+    double decreaseFactor,
+    // the rate grows by this many submits per second for every second without throttling
+    double increasePerSecond,
+    // the rate is never cut below this
+    double minSubmitsPerSecond,
+    // throttle responses within this time after a cut do not cut the rate again, as they answer
+    // requests sent before the cut
+    int cooldownMillis) {
+
+  public CongestionConfig {
+    if (decreaseFactor <= 0 || decreaseFactor >= 1) {
+      throw new IllegalArgumentException("Decrease factor must be between 0 and 1");
+    }
+    if (increasePerSecond <= 0) {
+      throw new IllegalArgumentException("Increase per second must be > 0");
+    }
+    if (minSubmitsPerSecond <= 0) {
+      throw new IllegalArgumentException("Min submits per second must be > 0");
+    }
+    if (cooldownMillis < 0) {
+      throw new IllegalArgumentException("Cooldown must be >= 0");
+    }
+  }
+
+  public CongestionConfig() {
+    this(0.5, 5, 1, 1000);
+  }
+}
@@ -0,0 +1,37 @@
+package com.telenordigital.sms.smpp.config;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+public record FlushConfig(
+    // flush as soon as this many writes are waiting for a flush
+    int maxPendingWrites,
+    // flush writes that have waited this long even if fewer are pending
+    int maxDelayMicros) {
+
+  public FlushConfig {
+    if (maxPendingWrites < 1) {
+      throw new IllegalArgumentException("Max pending writes must be >= 1");
+    }
+    if (maxDelayMicros < 0) {
+      throw new IllegalArgumentException("Max flush delay must be >= 0");
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package com.telenordigital.sms.smpp.config;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * The national languages whose 3GPP TS 23.038 shift tables the GSM submit encodings can use, by
+ * their national language identifier.
+ */
+public enum NationalLanguage {
+  TURKISH(1),
+  // Spanish has a single shift table only
+  SPANISH(2),
+  PORTUGUESE(3);
+
+  public final byte identifier;
+
+  NationalLanguage(final int identifier) {
+    this.identifier = (byte) identifier;
+  }
+}
@@ -0,0 +1,32 @@
+package com.telenordigital.sms.smpp.config;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+public enum ResponseCompletion {
+  // completes the response futures in a separate task on the event loop of the connection
+  EVENT_LOOP,
+  // completes the response futures right away on the event loop while decoding the response.
+  // Callbacks must be short and not block
+  INLINE,
+  // completes the response futures on the handler executor of the group, or on the event loop if
+  // the handlers run there
+  HANDLER_EXECUTOR
+}
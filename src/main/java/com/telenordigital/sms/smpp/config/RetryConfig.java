@@ -0,0 +1,54 @@
+package com.telenordigital.sms.smpp.config;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+public record RetryConfig(
+    // attempts per message, including the first one. 1 disables retries
+    int maxAttempts,
+    // the delay before a retry doubles from the min with every attempt, up to the max, and a random
+    // part of it is cut off so retries of many messages do not arrive at the SMSC together
+    int minDelayMillis,
+    int maxDelayMillis,
+    // the retries allowed as a share of the submitted messages, e.g. 0.1 for 10%
+    double budgetRatio,
+    // the retries allowed on top of the ratio, so a message can be retried while traffic is low
+    int budgetBurst) {
+
+  public RetryConfig {
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("Max attempts must be >= 1");
+    }
+    if (minDelayMillis < 0 || maxDelayMillis < minDelayMillis) {
+      throw new IllegalArgumentException("Retry delays must be 0 <= min <= max");
+    }
+    if (budgetRatio < 0) {
+      throw new IllegalArgumentException("Retry budget ratio must be >= 0");
+    }
+    if (budgetBurst < 0) {
+      throw new IllegalArgumentException("Retry budget burst must be >= 0");
+    }
+  }
+
+  /** One immediate retry, with at most 10% of the messages retried. */
+  public RetryConfig() {
+    this(2, 0, 0, 0.1, 10);
+  }
+}
@@ -0,0 +1,32 @@
+package com.telenordigital.sms.smpp.config;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+public enum Routing {
+  // the less loaded of two connections picked at random
+  POWER_OF_TWO_CHOICES,
+  // the connection with the most open window slots
+  LEAST_LOADED,
+  // the faster of two connections picked at random, by response time, error rate and load
+  LATENCY_WEIGHTED,
+  // the same connection for every message to an MSISDN, to keep them in order
+  CONSISTENT_HASH
+}
@@ -21,6 +21,7 @@ package com.telenordigital.sms.smpp.config;
  */
 
 import java.net.URI;
+import java.util.List;
 
 public record SmppConnectionConfig(
     String host,
@@ -44,7 +45,93 @@ public record SmppConnectionConfig(
     TlsConfig tls,
     boolean splitWithUdh,
     int windowSize,
-    boolean useNetworkSpecificTonForShortCode) {
+    boolean useNetworkSpecificTonForShortCode,
+    // I/O transport and native socket options, null uses the defaults
+    TransportConfig transport,
+    // how the response futures are completed, null completes them on the event loop
+    ResponseCompletion responseCompletion,
+    // coalesces flushes of single submits, null flushes every submit immediately
+    FlushConfig flush,
+    // captures a sample of the SMPP frames to disk, null disables the capture
+    CaptureConfig capture,
+    // requests wait for a free window slot instead of failing, null fails them immediately
+    WindowQueueConfig windowQueue,
+    // limits the submit_sm rate of every bind, requests over the rate wait in the window queue
+    ThrottleConfig throttle,
+    // sizes the window from the response times within these bounds, null keeps windowSize fixed
+    AdaptiveWindowConfig adaptiveWindow,
+    // takes the bind out of routing while it keeps failing, null disables the breaker
+    CircuitBreakerConfig circuitBreaker,
+    // how submit_sm encodes messages in the GSM alphabet, null sends them as Latin-1
+    SubmitEncoding submitEncoding,
+    // shift tables the GSM submit encodings use when they save segments, null uses none. Only for
+    // handsets and SMSCs supporting the national language shift tables of 3GPP TS 23.038
+    List<NationalLanguage> nationalLanguages) {
+
+  public SmppConnectionConfig {
+    if (transport == null) {
+      transport = new TransportConfig();
+    }
+    if (submitEncoding == null) {
+      submitEncoding = SubmitEncoding.LATIN1;
+    }
+    nationalLanguages = nationalLanguages == null ? List.of() : List.copyOf(nationalLanguages);
+    if (responseCompletion == null) {
+      responseCompletion = ResponseCompletion.EVENT_LOOP;
+    }
+    if (throttle != null && windowQueue == null) {
+      // throttled requests need somewhere to wait
+      windowQueue = new WindowQueueConfig(windowSize, Math.max(1, requestTimeoutSeconds * 1000));
+    }
+  }
+
+  public SmppConnectionConfig(
+      String host,
+      int port,
+      int numberOfBinds,
+      BindType bindType,
+      DefaultEncoding defaultEncoding,
+      int reconnectTimeSeconds,
+      int idleTimeSeconds,
+      int requestTimeoutSeconds,
+      int shutdownTimeoutSeconds,
+      int handlerTimeoutSeconds,
+      String systemId,
+      String password,
+      String systemType,
+      TlsConfig tls,
+      boolean splitWithUdh,
+      int windowSize,
+      boolean useNetworkSpecificTonForShortCode) {
+    this(
+        host,
+        port,
+        numberOfBinds,
+        bindType,
+        defaultEncoding,
+        reconnectTimeSeconds,
+        idleTimeSeconds,
+        requestTimeoutSeconds,
+        shutdownTimeoutSeconds,
+        handlerTimeoutSeconds,
+        systemId,
+        password,
+        systemType,
+        tls,
+        splitWithUdh,
+        windowSize,
+        useNetworkSpecificTonForShortCode,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null);
+  }
 
   public SmppConnectionConfig(String host, int port, int reconnectTimeSeconds, int numberOfBinds) {
     this(
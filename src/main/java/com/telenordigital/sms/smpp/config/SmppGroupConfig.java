@@ -0,0 +1,77 @@
+package com.telenordigital.sms.smpp.config;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+public record SmppGroupConfig(
+    // number of I/O threads shared by all binds of a group. 0 uses one thread per bind, but no
+    // more than the number of available processors
+    int ioThreads,
+    // where the delivery receipt and SMS MO handlers are called
+    HandlerExecutor handlerExecutor,
+    // how a connection is picked for a message
+    Routing routing,
+    // how messages failing with a retriable error are submitted again
+    RetryConfig retry,
+    // executor owned by the caller that runs the handlers instead of handlerExecutor, or null,
+    // not shut down when the group is closed
+    Executor executor) {
+
+  public SmppGroupConfig {
+    if (ioThreads < 0) {
+      throw new IllegalArgumentException("Number of I/O threads must be >= 0");
+    }
+    Objects.requireNonNull(handlerExecutor);
+    Objects.requireNonNull(routing);
+    Objects.requireNonNull(retry);
+  }
+
+  public SmppGroupConfig(
+      final int ioThreads,
+      final HandlerExecutor handlerExecutor,
+      final Routing routing,
+      final RetryConfig retry) {
+    this(ioThreads, handlerExecutor, routing, retry, null);
+  }
+
+  public SmppGroupConfig(
+      final int ioThreads,
+      final Executor executor,
+      final Routing routing,
+      final RetryConfig retry) {
+    this(ioThreads, HandlerExecutor.EVENT_LOOP, routing, retry, Objects.requireNonNull(executor));
+  }
+
+  public SmppGroupConfig(
+      final int ioThreads, final HandlerExecutor handlerExecutor, final Routing routing) {
+    this(ioThreads, handlerExecutor, routing, new RetryConfig());
+  }
+
+  public SmppGroupConfig(final int ioThreads, final HandlerExecutor handlerExecutor) {
+    this(ioThreads, handlerExecutor, Routing.POWER_OF_TWO_CHOICES);
+  }
+
+  public SmppGroupConfig() {
+    this(0, HandlerExecutor.EVENT_LOOP);
+  }
+}
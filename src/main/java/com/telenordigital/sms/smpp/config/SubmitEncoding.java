@@ -0,0 +1,32 @@
+package com.telenordigital.sms.smpp.config;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/** How submit_sm encodes messages which fit the GSM alphabet. Other messages are sent as UCS2. */
+public enum SubmitEncoding {
+  // Latin-1, data_coding 0x03, for messages in both Latin-1 and the GSM default alphabet
+  LATIN1,
+  // the GSM default alphabet and extension table, data_coding 0x00, one septet per octet. The SMSC
+  // packs them, 160 characters per SMS and 153 per part of a long message
+  GSM7,
+  // the GSM default alphabet and extension table, data_coding 0x00, septets packed into octets
+  GSM7_PACKED
+}
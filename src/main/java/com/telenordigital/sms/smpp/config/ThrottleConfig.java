@@ -0,0 +1,51 @@
+package com.telenordigital.sms.smpp.config;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+public record ThrottleConfig(
+    // the most submit_sm sent per second on a bind
+    double maxSubmitsPerSecond,
+    // the most submit_sm sent back to back after an idle period
+    int burst,
+    // cuts the rate when the SMSC throttles us and ramps it back up to maxSubmitsPerSecond, null
+    // keeps the rate fixed
+    CongestionConfig congestion) {
+
+  public ThrottleConfig {
+    if (maxSubmitsPerSecond <= 0) {
+      throw new IllegalArgumentException("Max submits per second must be > 0");
+    }
+    if (burst < 1) {
+      throw new IllegalArgumentException("Burst must be >= 1");
+    }
+    if (congestion != null && congestion.minSubmitsPerSecond() > maxSubmitsPerSecond) {
+      throw new IllegalArgumentException("Min submits per second must be <= max");
+    }
+  }
+
+  public ThrottleConfig(final double maxSubmitsPerSecond, final int burst) {
+    this(maxSubmitsPerSecond, burst, null);
+  }
+
+  public ThrottleConfig(final double maxSubmitsPerSecond) {
+    this(maxSubmitsPerSecond, 1);
+  }
+}
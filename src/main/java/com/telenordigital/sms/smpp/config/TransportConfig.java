@@ -0,0 +1,47 @@
+package com.telenordigital.sms.smpp.config;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Objects;
+
+public record TransportConfig(
+    Transport type,
+    // TCP_USER_TIMEOUT of the socket, 0 keeps the OS default. Native transports only
+    int tcpUserTimeoutMillis,
+    // the connection stops accepting submits when more bytes than the high water mark are waiting
+    // to be written, and accepts them again when it falls below the low water mark
+    int writeBufferLowWaterMark,
+    int writeBufferHighWaterMark) {
+
+  public TransportConfig {
+    Objects.requireNonNull(type);
+    if (tcpUserTimeoutMillis < 0) {
+      throw new IllegalArgumentException("TCP user timeout must be >= 0");
+    }
+    if (writeBufferLowWaterMark < 0 || writeBufferHighWaterMark < writeBufferLowWaterMark) {
+      throw new IllegalArgumentException("Write buffer water marks must be 0 <= low <= high");
+    }
+  }
+
+  public TransportConfig() {
+    this(Transport.AUTO, 0, 32 * 1024, 64 * 1024);
+  }
+}
@@ -0,0 +1,37 @@
+package com.telenordigital.sms.smpp.config;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+public record WindowQueueConfig(
+    // the most requests waiting for a window slot, more are rejected immediately
+    int maxDepth,
+    // requests which do not get a window slot in this time are rejected
+    int maxWaitMillis) {
+
+  public WindowQueueConfig {
+    if (maxDepth < 0) {
+      throw new IllegalArgumentException("Max queue depth must be >= 0");
+    }
+    if (maxWaitMillis < 1) {
+      throw new IllegalArgumentException("Max queue wait must be >= 1ms");
+    }
+  }
+}
@@ -83,7 +83,14 @@ public record DeliverSm(
           default -> null;
         };
 
-    return Optional.ofNullable(charset).map(cs -> new String(encodedShortMessage.array(), cs));
+    final byte[] bytes = encodedShortMessage.array();
+    // the GSM charset decodes straight from its tables, without a CharsetDecoder
+    return Optional.ofNullable(charset)
+        .map(
+            cs ->
+                cs instanceof GsmCharset gsm
+                    ? gsm.decode(bytes, 0, bytes.length)
+                    : new String(bytes, cs));
   }
 
   public static DeliverSm deserialize(final ByteBuf buf, final Charset defaultCharset) {
@@ -0,0 +1,151 @@
+package com.telenordigital.sms.smpp.pdu;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.telenordigital.sms.smpp.charset.GsmTables;
+import com.telenordigital.sms.smpp.charset.NationalShiftTables;
+import com.telenordigital.sms.smpp.config.NationalLanguage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The shift tables a message is sent with in the GSM alphabet and the segments it takes.
+ *
+ * @param split the segments of the message when it does not fit in one
+ */
+record GsmPlan(GsmTables tables, int septets, int segments, Segments split) {
+  private static final int SEGMENT_BITS = 140 * 8;
+  // the concatenation information element with a single byte reference
+  static final int CONCATENATION_LENGTH = 5;
+
+  /**
+   * The tables taking the fewest segments, the shortest user data header among those, or null if no
+   * tables represent the message. The message is scanned once for all the candidate tables, which
+   * also finds the segment boundaries of each. A message split by the SMSC is only sent with the
+   * default tables, the SMSC cannot signal the shift tables in every part.
+   */
+  static GsmPlan cheapest(
+      final String message,
+      final List<NationalLanguage> languages,
+      final boolean packed,
+      final boolean splitWithUdh) {
+    final List<GsmTables> candidates = new ArrayList<>();
+    candidates.add(GsmTables.DEFAULT);
+    for (final var language : languages) {
+      final var shift = NationalShiftTables.of(language.identifier);
+      candidates.add(new GsmTables(null, shift));
+      if (shift.hasLockingShift()) {
+        candidates.add(new GsmTables(shift, null));
+        candidates.add(new GsmTables(shift, shift));
+      }
+    }
+    final var septets = new int[candidates.size()];
+    final var splits = new Segments.Builder[septets.length];
+    for (int k = 0; k < splits.length; k++) {
+      splits[k] = new Segments.Builder(capacity(udhLength(candidates.get(k), true)), packed);
+    }
+    int remaining = septets.length;
+    for (int i = 0; i < message.length() && remaining > 0; i++) {
+      final char c = message.charAt(i);
+      for (int k = 0; k < septets.length; k++) {
+        if (septets[k] >= 0) {
+          final int n = candidates.get(k).septets(c);
+          if (n == 0) {
+            septets[k] = -1;
+            remaining--;
+          } else {
+            septets[k] += n;
+            splits[k].add(i, n, c == '\r');
+          }
+        }
+      }
+    }
+    final boolean endsWithCarriageReturn = message.endsWith("\r");
+    GsmPlan best = null;
+    for (int k = 0; k < septets.length; k++) {
+      if (septets[k] >= 0) {
+        best =
+            cheaper(
+                best,
+                plan(
+                    message,
+                    candidates.get(k),
+                    septets[k],
+                    splits[k],
+                    packed && endsWithCarriageReturn));
+      }
+    }
+    if (best != null && best.segments > 1 && !splitWithUdh) {
+      return septets[0] < 0
+          ? null
+          : plan(
+              message, GsmTables.DEFAULT, septets[0], splits[0], packed && endsWithCarriageReturn);
+    }
+    return best;
+  }
+
+  /**
+   * A packed message exactly filling one segment and ending with a carriage return does not fit,
+   * there would be no room for the one doubling it.
+   */
+  private static GsmPlan plan(
+      final String message,
+      final GsmTables tables,
+      final int septets,
+      final Segments.Builder split,
+      final boolean doublesLastCarriageReturn) {
+    final int single = capacity(udhLength(tables, false));
+    if (septets < single || (septets == single && !doublesLastCarriageReturn)) {
+      return new GsmPlan(tables, septets, 1, null);
+    }
+    final var segments = split.build(message.length());
+    return new GsmPlan(tables, septets, segments.count(), segments);
+  }
+
+  /** The length of the user data header including its length octet, 0 if there is none. */
+  static int udhLength(final GsmTables tables, final boolean concatenated) {
+    final int elements = tables.udhLength() + (concatenated ? CONCATENATION_LENGTH : 0);
+    return elements == 0 ? 0 : 1 + elements;
+  }
+
+  /** The fill bits aligning the first packed septet after a user data header. */
+  static int fillBits(final int udhLength) {
+    return (7 - udhLength * 8 % 7) % 7;
+  }
+
+  private static int capacity(final int udhLength) {
+    return (SEGMENT_BITS - udhLength * 8) / 7;
+  }
+
+  private static GsmPlan cheaper(final GsmPlan best, final GsmPlan candidate) {
+    if (best == null) {
+      return candidate;
+    }
+    if (candidate == null) {
+      return best;
+    }
+    return candidate.segments < best.segments
+            || (candidate.segments == best.segments
+                && candidate.tables.udhLength() < best.tables.udhLength())
+        ? candidate
+        : best;
+  }
+}
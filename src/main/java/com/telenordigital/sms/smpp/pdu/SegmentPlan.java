@@ -0,0 +1,309 @@
+package com.telenordigital.sms.smpp.pdu;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.telenordigital.sms.smpp.charset.GsmTables;
+import com.telenordigital.sms.smpp.config.NationalLanguage;
+import com.telenordigital.sms.smpp.config.SubmitEncoding;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * How a message is encoded and where it is split into segments, decided before anything is encoded.
+ * Each segment is then encoded straight into its final short message, user data header first, so
+ * the characters are copied once.
+ */
+final class SegmentPlan {
+  // the user data header with only the concatenation information element
+  private static final int CONCATENATION_UDH_LENGTH = 1 + GsmPlan.CONCATENATION_LENGTH;
+  private static final int LATIN1_MAX_BYTES = 159;
+  private static final int UCS2_MAX_BYTES = 140;
+  private static final int GSM_MAX_SEPTETS = 160;
+  private static final int GSM_PACKED_MAX_BYTES = 140;
+
+  private final byte dataCoding;
+  private final int maxBytes;
+  // the GSM tables, null for Latin-1 and UCS2
+  private final GsmTables tables;
+  private final boolean packed;
+  private final boolean concatenated;
+  // the first character of each short message, then the length of the message
+  private final int[] boundaries;
+  // the bytes of each Latin-1 or UCS2 short message, the septets of each GSM short message
+  private final int[] units;
+  // the SMS the handset receives, more than the short messages when the SMSC splits the message
+  private final int parts;
+
+  private SegmentPlan(
+      final byte dataCoding,
+      final int maxBytes,
+      final GsmTables tables,
+      final boolean packed,
+      final boolean concatenated,
+      final int[] boundaries,
+      final int[] units,
+      final int parts) {
+    this.dataCoding = dataCoding;
+    this.maxBytes = maxBytes;
+    this.tables = tables;
+    this.packed = packed;
+    this.concatenated = concatenated;
+    this.boundaries = boundaries;
+    this.units = units;
+    this.parts = parts;
+  }
+
+  static SegmentPlan create(
+      final String message,
+      final SubmitEncoding encoding,
+      final List<NationalLanguage> nationalLanguages,
+      final boolean splitWithUdh) {
+    if (encoding != SubmitEncoding.LATIN1) {
+      final boolean packed = encoding == SubmitEncoding.GSM7_PACKED;
+      final var plan = GsmPlan.cheapest(message, nationalLanguages, packed, splitWithUdh);
+      if (plan != null) {
+        return create(
+            message,
+            PduConstants.DATA_CODING_DEFAULT,
+            packed ? GSM_PACKED_MAX_BYTES : GSM_MAX_SEPTETS,
+            plan.tables(),
+            packed,
+            plan.septets(),
+            plan.split(),
+            splitWithUdh);
+      }
+      // not in the GSM alphabet, sent as UCS2
+    }
+    return createFixedWidth(message, splitWithUdh);
+  }
+
+  /**
+   * Latin-1 if every character is in both Latin-1 and the GSM alphabet, see SubmitSm#getCharset,
+   * UCS2 otherwise. The UCS2 segments are found in the same scan, the Latin-1 ones are one byte per
+   * character.
+   */
+  private static SegmentPlan createFixedWidth(final String message, final boolean splitWithUdh) {
+    final int length = message.length();
+    final var ucs2 =
+        length * 2 > UCS2_MAX_BYTES
+            ? new Segments.Builder(UCS2_MAX_BYTES - CONCATENATION_UDH_LENGTH, false)
+            : null;
+    boolean latin1 = true;
+    int i = 0;
+    while (i < length) {
+      final char c = message.charAt(i);
+      latin1 = latin1 && SubmitSm.isLatin1(c);
+      final int chars =
+          Character.isHighSurrogate(c)
+                  && i + 1 < length
+                  && Character.isLowSurrogate(message.charAt(i + 1))
+              ? 2
+              : 1;
+      if (ucs2 != null) {
+        ucs2.add(i, 2 * chars, false);
+      } else if (!latin1) {
+        break;
+      }
+      i += chars;
+    }
+    if (latin1) {
+      return create(
+          message,
+          PduConstants.DATA_CODING_LATIN1,
+          LATIN1_MAX_BYTES,
+          null,
+          false,
+          length,
+          length <= LATIN1_MAX_BYTES
+              ? null
+              : Segments.fixed(length, LATIN1_MAX_BYTES - CONCATENATION_UDH_LENGTH),
+          splitWithUdh);
+    }
+    return create(
+        message,
+        PduConstants.DATA_CODING_UCS2,
+        UCS2_MAX_BYTES,
+        null,
+        false,
+        length * 2,
+        ucs2 == null ? null : ucs2.build(length),
+        splitWithUdh);
+  }
+
+  /**
+   * @param split the segments of the message when it does not fit in one short message, null if it
+   *     does
+   */
+  private static SegmentPlan create(
+      final String message,
+      final byte dataCoding,
+      final int maxBytes,
+      final GsmTables tables,
+      final boolean packed,
+      final int units,
+      final Segments split,
+      final boolean splitWithUdh) {
+    if (split == null || !splitWithUdh) {
+      // The SMSC splits the message_payload TLV into the same segments
+      return new SegmentPlan(
+          dataCoding,
+          maxBytes,
+          tables,
+          packed,
+          false,
+          new int[] {0, message.length()},
+          new int[] {units},
+          split == null ? 1 : split.count());
+    }
+    // Split message using UDH, the SMSC does not support the message_payload TLV
+    return new SegmentPlan(
+        dataCoding,
+        maxBytes,
+        tables,
+        packed,
+        true,
+        split.boundaries(),
+        split.units(),
+        split.count());
+  }
+
+  /** The number of short messages, one submit_sm each. */
+  int count() {
+    return units.length;
+  }
+
+  /** The number of SMS the handset receives. */
+  int parts() {
+    return parts;
+  }
+
+  byte dataCoding() {
+    return dataCoding;
+  }
+
+  int maxBytes() {
+    return maxBytes;
+  }
+
+  boolean udhUsed() {
+    return udhLength() > 0;
+  }
+
+  /** Encodes the short message of each segment. */
+  byte[][] encode(final String message, final byte reference) {
+    final int udhLength = udhLength();
+    final var shortMessages = new byte[count()][];
+    for (int i = 0; i < shortMessages.length; i++) {
+      final int start = boundaries[i];
+      final int end = boundaries[i + 1];
+      final var shortMessage =
+          new byte[udhLength + payloadLength(message, start, end, udhLength, units[i])];
+      writeUdh(shortMessage, udhLength, reference, i + 1);
+      if (tables == null) {
+        encodeFixedWidth(message, start, end, shortMessage, udhLength);
+      } else if (packed) {
+        tables.encodePacked(
+            message, start, end, shortMessage, udhLength, GsmPlan.fillBits(udhLength));
+      } else {
+        tables.encode(message, start, end, shortMessage, udhLength);
+      }
+      shortMessages[i] = shortMessage;
+    }
+    return shortMessages;
+  }
+
+  private int udhLength() {
+    if (tables != null) {
+      return GsmPlan.udhLength(tables, concatenated);
+    }
+    return concatenated ? CONCATENATION_UDH_LENGTH : 0;
+  }
+
+  private int payloadLength(
+      final String message, final int start, final int end, final int udhLength, final int units) {
+    if (tables != null && packed) {
+      return tables.packedLength(message, start, end, units, GsmPlan.fillBits(udhLength));
+    }
+    return units;
+  }
+
+  private void writeUdh(
+      final byte[] shortMessage, final int udhLength, final byte reference, final int part) {
+    if (udhLength == 0) {
+      return;
+    }
+    final ByteBuffer buf = ByteBuffer.wrap(shortMessage);
+    // Length of the UDH
+    buf.put((byte) (udhLength - 1));
+    if (concatenated) {
+      // IEI, 0x0 indicates a single byte reference number
+      // Ideally we would use 0x8, indicating a two-byte reference number,
+      // but not all SMSCs support this.
+      buf.put((byte) 0x0);
+      // Length of the remaining fields
+      buf.put((byte) 0x3);
+      // Single byte reference number, must be equal for all parts
+      buf.put(reference);
+      // Number of parts
+      buf.put((byte) count());
+      // This part's number in the sequence
+      buf.put((byte) part);
+    }
+    if (tables != null) {
+      tables.writeUdh(buf);
+    }
+  }
+
+  private void encodeFixedWidth(
+      final String message,
+      final int start,
+      final int end,
+      final byte[] shortMessage,
+      final int offset) {
+    int position = offset;
+    if (dataCoding == PduConstants.DATA_CODING_LATIN1) {
+      for (int i = start; i < end; i++) {
+        shortMessage[position++] = (byte) message.charAt(i);
+      }
+      return;
+    }
+    for (int i = start; i < end; i++) {
+      final char c = utf16(message, i);
+      shortMessage[position++] = (byte) (c >>> 8);
+      shortMessage[position++] = (byte) c;
+    }
+  }
+
+  // The UTF-16 code unit, with the replacement character for a lone surrogate like the UTF-16BE
+  // charset
+  private static char utf16(final String message, final int i) {
+    final char c = message.charAt(i);
+    if (Character.isHighSurrogate(c)) {
+      return i + 1 < message.length() && Character.isLowSurrogate(message.charAt(i + 1))
+          ? c
+          : '\uFFFD';
+    }
+    if (Character.isLowSurrogate(c)) {
+      return i > 0 && Character.isHighSurrogate(message.charAt(i - 1)) ? c : '\uFFFD';
+    }
+    return c;
+  }
+}
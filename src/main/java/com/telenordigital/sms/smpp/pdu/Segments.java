@@ -0,0 +1,96 @@
+package com.telenordigital.sms.smpp.pdu;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+
+/**
+ * Where a message is split into segments.
+ *
+ * @param boundaries the first character of each segment, then the length of the message
+ * @param units the bytes of each Latin-1 or UCS2 segment, the septets of each GSM segment
+ */
+record Segments(int[] boundaries, int[] units) {
+
+  int count() {
+    return units.length;
+  }
+
+  /** Segments of one unit per character, split every capacity characters. */
+  static Segments fixed(final int length, final int capacity) {
+    final int count = (length + capacity - 1) / capacity;
+    final var boundaries = new int[count + 1];
+    final var units = new int[count];
+    for (int i = 0; i < count; i++) {
+      boundaries[i] = i * capacity;
+      units[i] = Math.min(capacity, length - i * capacity);
+    }
+    boundaries[count] = length;
+    return new Segments(boundaries, units);
+  }
+
+  /**
+   * Fills each segment with as many characters as fit in its capacity while the message is scanned.
+   * The caller adds a surrogate pair or an escape sequence as one character, splitting it would
+   * show as garbage on the handset. A packed segment does not end with a carriage return filling
+   * it, there would be no room for the one doubling it.
+   */
+  static final class Builder {
+    private final int capacity;
+    private final boolean packed;
+    // allocated on the first split, most messages fit in one segment
+    private int[] boundaries;
+    private int[] units;
+    private int count;
+    private int used;
+
+    Builder(final int capacity, final boolean packed) {
+      this.capacity = capacity;
+      this.packed = packed;
+    }
+
+    /** Adds the character at index taking cost units. */
+    void add(final int index, final int cost, final boolean carriageReturn) {
+      if (used + cost > capacity || (packed && carriageReturn && used + cost == capacity)) {
+        if (boundaries == null) {
+          boundaries = new int[8];
+          units = new int[7];
+        } else if (count + 1 == units.length) {
+          boundaries = Arrays.copyOf(boundaries, boundaries.length * 2);
+          units = Arrays.copyOf(units, units.length * 2);
+        }
+        units[count++] = used;
+        boundaries[count] = index;
+        used = 0;
+      }
+      used += cost;
+    }
+
+    Segments build(final int length) {
+      if (boundaries == null) {
+        return new Segments(new int[] {0, length}, new int[] {used});
+      }
+      units[count] = used;
+      boundaries[count + 1] = length;
+      return new Segments(Arrays.copyOf(boundaries, count + 2), Arrays.copyOf(units, count + 1));
+    }
+  }
+}
@@ -21,8 +21,9 @@ package com.telenordigital.sms.smpp.pdu;
  */
 
 import com.telenordigital.sms.smpp.charset.GsmCharset;
+import com.telenordigital.sms.smpp.config.NationalLanguage;
+import com.telenordigital.sms.smpp.config.SubmitEncoding;
 import io.netty.buffer.ByteBuf;
-import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.time.Clock;
@@ -34,7 +35,6 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.function.Supplier;
-import java.util.stream.IntStream;
 
 public record SubmitSm(
     int commandStatus,
@@ -77,6 +77,52 @@ public record SubmitSm(
       final Duration validity,
       final boolean splitWithUdh,
       final boolean useNetworkSpecificTonForShortCode) {
+    return create(
+        clock,
+        sender,
+        msisdn,
+        message,
+        validity,
+        splitWithUdh,
+        useNetworkSpecificTonForShortCode,
+        SubmitEncoding.LATIN1);
+  }
+
+  public static List<SubmitSm> create(
+      final Clock clock,
+      final String sender,
+      final String msisdn,
+      final String message,
+      final Duration validity,
+      final boolean splitWithUdh,
+      final boolean useNetworkSpecificTonForShortCode,
+      final SubmitEncoding encoding) {
+    return create(
+        clock,
+        sender,
+        msisdn,
+        message,
+        validity,
+        splitWithUdh,
+        useNetworkSpecificTonForShortCode,
+        encoding,
+        List.of());
+  }
+
+  /**
+   * @param nationalLanguages the shift tables the GSM encodings may use when they take fewer
+   *     segments than the default alphabet
+   */
+  public static List<SubmitSm> create(
+      final Clock clock,
+      final String sender,
+      final String msisdn,
+      final String message,
+      final Duration validity,
+      final boolean splitWithUdh,
+      final boolean useNetworkSpecificTonForShortCode,
+      final SubmitEncoding encoding,
+      final List<NationalLanguage> nationalLanguages) {
     return create(
         clock,
         sender,
@@ -85,7 +131,9 @@ public record SubmitSm(
         validity,
         splitWithUdh,
         () -> (byte) random.nextInt(0xff),
-        useNetworkSpecificTonForShortCode);
+        useNetworkSpecificTonForShortCode,
+        encoding,
+        nationalLanguages);
   }
 
   static List<SubmitSm> create(
@@ -97,90 +145,62 @@ public record SubmitSm(
       final boolean splitWithUdh,
       final Supplier<Byte> referenceGenerator,
       final boolean useNetworkSpecificTonForShortCode) {
-    final var charset = getCharset(message);
-    final var canUseLatin1 = charset == StandardCharsets.ISO_8859_1;
-    final var encodedShortMessage = message.getBytes(charset);
-    final var maxBytes = canUseLatin1 ? 159 : 140;
-    final int msgCount = 1 + (encodedShortMessage.length / maxBytes);
+    return create(
+        clock,
+        sender,
+        msisdn,
+        message,
+        validity,
+        splitWithUdh,
+        referenceGenerator,
+        useNetworkSpecificTonForShortCode,
+        SubmitEncoding.LATIN1,
+        List.of());
+  }
+
+  static List<SubmitSm> create(
+      final Clock clock,
+      final String sender,
+      final String msisdn,
+      final String message,
+      final Duration validity,
+      final boolean splitWithUdh,
+      final Supplier<Byte> referenceGenerator,
+      final boolean useNetworkSpecificTonForShortCode,
+      final SubmitEncoding encoding,
+      final List<NationalLanguage> nationalLanguages) {
+    final var plan = SegmentPlan.create(message, encoding, nationalLanguages, splitWithUdh);
     final Address senderAddress = getSender(sender, useNetworkSpecificTonForShortCode);
     final Address destination = getDestination(msisdn);
     final String validityPeriod = validityPeriod(clock, validity);
-    final byte dataCoding =
-        canUseLatin1 ? PduConstants.DATA_CODING_LATIN1 : PduConstants.DATA_CODING_UCS2;
-    final ByteArray msgArray = new ByteArray(encodedShortMessage);
-
-    if (msgCount == 1 || !splitWithUdh) {
-      return List.of(
-          new SubmitSm(
-              0,
-              Sequencer.next(),
-              senderAddress,
-              destination,
-              validityPeriod,
-              dataCoding,
-              msgArray,
-              maxBytes,
-              false));
-    } else {
-      // Split message using UDH, the SMSC does not support the message_payload TLV
-      final byte reference = referenceGenerator.get();
-      final var messages = splitMessage(encodedShortMessage, maxBytes);
-
-      return messages.stream()
-          .map(
-              m ->
-                  new SubmitSm(
-                      0,
-                      Sequencer.next(),
-                      senderAddress,
-                      destination,
-                      validityPeriod,
-                      dataCoding,
-                      messageWithUdh(reference, messages.size(), m.index + 1, m.message),
-                      maxBytes,
-                      true))
-          .toList();
-    }
-  }
-
-  record MessagePart(int index, byte[] message) {}
-
-  static List<MessagePart> splitMessage(final byte[] encodedShortMessage, final int maxBytes) {
-    final int maxBytesExcludingUdh = maxBytes - 6;
-    final int msgCount = 1 + (encodedShortMessage.length / maxBytesExcludingUdh);
+    final byte reference = plan.count() > 1 ? referenceGenerator.get() : 0;
 
-    return IntStream.range(0, msgCount)
-        .mapToObj(
-            i ->
-                new MessagePart(
-                    i,
-                    Arrays.copyOfRange(
-                        encodedShortMessage,
-                        i * maxBytesExcludingUdh,
-                        Math.min((i + 1) * maxBytesExcludingUdh, encodedShortMessage.length))))
+    return Arrays.stream(plan.encode(message, reference))
+        .map(
+            shortMessage ->
+                new SubmitSm(
+                    0,
+                    Sequencer.next(),
+                    senderAddress,
+                    destination,
+                    validityPeriod,
+                    plan.dataCoding(),
+                    new ByteArray(shortMessage),
+                    plan.maxBytes(),
+                    plan.udhUsed()))
         .toList();
   }
 
-  private static ByteArray messageWithUdh(
-      final byte reference, final int pduCount, final int partNumber, final byte[] messagePart) {
-    final ByteBuffer buf = ByteBuffer.allocate(6 + messagePart.length);
-    // Length of the UDH
-    buf.put((byte) 0x5);
-    // IEI, 0x0 indicates a single byte reference number
-    // Ideally we would use 0x8, indicating a two-byte reference number,
-    // but not all SMSCs support this.
-    buf.put((byte) 0x0);
-    // Length of the remaining fields
-    buf.put((byte) 0x3);
-    // Single byte reference number, must be equal for all parts
-    buf.put(reference);
-    // Number of parts
-    buf.put((byte) pduCount);
-    // This part's number in the sequence
-    buf.put((byte) partNumber);
-    // The actual message
-    buf.put(messagePart);
-    return new ByteArray(buf.array());
+  /**
+   * The number of SMS the handset receives for the message, counted without encoding it. Long
+   * messages are split without breaking a character, a surrogate pair or an escape sequence.
+   */
+  public static int countParts(
+      final String message,
+      final boolean splitWithUdh,
+      final SubmitEncoding encoding,
+      final List<NationalLanguage> nationalLanguages) {
+    return SegmentPlan.create(message, encoding, nationalLanguages, splitWithUdh).parts();
   }
 
   static String validityPeriod(final Clock clock, final Duration duration) {
@@ -216,12 +236,16 @@ public record SubmitSm(
     // Some SMSCs will convert a Latin1 encoded message to GSM encoding, even if the
     // message is not representable using GSM. This results in any characters that
     // are in Latin1, but not in GSM, to be dropped from the message.
-    if (StandardCharsets.ISO_8859_1.newEncoder().canEncode(message)
-        && GsmCharset.GSM.canRepresent(message)) {
-      return StandardCharsets.ISO_8859_1;
+    for (int i = 0; i < message.length(); i++) {
+      if (!isLatin1(message.charAt(i))) {
+        return StandardCharsets.UTF_16BE;
+      }
     }
+    return StandardCharsets.ISO_8859_1;
+  }
 
-    return StandardCharsets.UTF_16BE;
+  static boolean isLatin1(final char c) {
+    return c <= 0xff && GsmCharset.GSM.canRepresent(c);
   }
 
   @Override
@@ -21,6 +21,8 @@
 module com.telenordigital.sms.smpp {
   requires io.netty.codec;
   requires io.netty.transport;
+  requires io.netty.transport.classes.epoll;
+  requires io.netty.transport.classes.io_uring;
   requires io.netty.buffer;
   requires io.netty.handler;
   requires io.netty.common;
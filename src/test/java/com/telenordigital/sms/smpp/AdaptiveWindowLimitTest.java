@@ -0,0 +1,72 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.telenordigital.sms.smpp.config.AdaptiveWindowConfig;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveWindowLimitTest {
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void growWhileRttIsStable() {
+    final var limit = new AdaptiveWindowLimit(new AdaptiveWindowConfig(5, 200), 10);
+    for (int i = 0; i < 1000; i++) {
+      limit.onSample(200 * MS, limit.limit());
+    }
+    assertThat(limit.limit()).isEqualTo(200);
+  }
+
+  @Test
+  public void doNotGrowAnUnusedWindow() {
+    final var limit = new AdaptiveWindowLimit(new AdaptiveWindowConfig(5, 200), 10);
+    for (int i = 0; i < 1000; i++) {
+      limit.onSample(200 * MS, 2);
+    }
+    assertThat(limit.limit()).isEqualTo(10);
+  }
+
+  @Test
+  public void shrinkWhenTheSmscQueues() {
+    final var limit = new AdaptiveWindowLimit(new AdaptiveWindowConfig(5, 200), 100);
+    limit.onSample(5 * MS, 100);
+    assertThat(limit.limit()).isEqualTo(101);
+    // the RTT doubles, half of the window is waiting at the SMSC
+    for (int i = 0; i < 30; i++) {
+      limit.onSample(10 * MS, limit.limit());
+    }
+    assertThat(limit.limit()).isEqualTo(71);
+
+    for (int i = 0; i < 500; i++) {
+      limit.onSample(100 * MS, limit.limit());
+    }
+    assertThat(limit.limit()).isEqualTo(5);
+  }
+
+  @Test
+  public void initialLimitWithinBounds() {
+    assertThat(new AdaptiveWindowLimit(new AdaptiveWindowConfig(5, 20), 100).limit()).isEqualTo(20);
+    assertThat(new AdaptiveWindowLimit(new AdaptiveWindowConfig(5, 20), 1).limit()).isEqualTo(5);
+  }
+}
@@ -0,0 +1,117 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.telenordigital.sms.smpp.config.CircuitBreakerConfig;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CircuitBreakerTest {
+  private ScheduledExecutorService scheduler;
+  private final AtomicInteger changes = new AtomicInteger();
+
+  @BeforeEach
+  public void setUp() {
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  private CircuitBreaker breaker() {
+    return new CircuitBreaker(
+        "test", new CircuitBreakerConfig(3, 1000, 100, 2), scheduler, changes::incrementAndGet);
+  }
+
+  @Test
+  public void opensAfterConsecutiveFailures() {
+    final var breaker = breaker();
+    breaker.onFailure();
+    breaker.onFailure();
+    // a success resets the count
+    breaker.onResponse(0);
+    breaker.onResponse(CircuitBreaker.ESME_RSYSERR);
+    breaker.onResponse(CongestionController.ESME_RMSGQFUL);
+    assertThat(breaker.state()).isEqualTo(SmppCircuitState.CLOSED);
+    // rejected messages are not a failure of the SMSC
+    breaker.onResponse(0x0B);
+    assertThat(breaker.state()).isEqualTo(SmppCircuitState.CLOSED);
+
+    breaker.onFailure();
+    breaker.onFailure();
+    breaker.onFailure();
+    assertThat(breaker.state()).isEqualTo(SmppCircuitState.OPEN);
+    assertThat(breaker.tryAcquire(System.nanoTime())).isFalse();
+    assertThat(changes.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void closesAfterProbes() {
+    final var breaker = breaker();
+    breaker.trip();
+    Awaitility.await()
+        .atMost(1, TimeUnit.SECONDS)
+        .until(() -> breaker.state() == SmppCircuitState.HALF_OPEN);
+
+    // only the probes are let through
+    final long now = System.nanoTime();
+    assertThat(breaker.tryAcquire(now)).isTrue();
+    // a probe reserved by the group passes without taking another one
+    assertThat(breaker.tryReserveProbe(now)).isTrue();
+    assertThat(breaker.tryAcquire(now)).isTrue();
+    assertThat(breaker.tryAcquire(now)).isFalse();
+    assertThat(breaker.tryReserveProbe(now)).isFalse();
+    // new probes when the previous ones do not answer
+    assertThat(breaker.tryAcquire(now + TimeUnit.MILLISECONDS.toNanos(100))).isTrue();
+
+    breaker.onSuccess();
+    assertThat(breaker.state()).isEqualTo(SmppCircuitState.HALF_OPEN);
+    breaker.onSuccess();
+    assertThat(breaker.state()).isEqualTo(SmppCircuitState.CLOSED);
+    assertThat(breaker.tryAcquire(now)).isTrue();
+    assertThat(breaker.tryReserveProbe(now)).isFalse();
+    assertThat(changes.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void reopensOnFailedProbe() {
+    final var breaker = breaker();
+    breaker.trip();
+    Awaitility.await()
+        .atMost(1, TimeUnit.SECONDS)
+        .until(() -> breaker.state() == SmppCircuitState.HALF_OPEN);
+    breaker.onFailure();
+    assertThat(breaker.state()).isEqualTo(SmppCircuitState.OPEN);
+    Awaitility.await()
+        .atMost(1, TimeUnit.SECONDS)
+        .until(() -> breaker.state() == SmppCircuitState.HALF_OPEN);
+  }
+}
@@ -0,0 +1,117 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.telenordigital.sms.smpp.config.CaptureConfig;
+import com.telenordigital.sms.smpp.config.CircuitBreakerConfig;
+import com.telenordigital.sms.smpp.config.FlushConfig;
+import com.telenordigital.sms.smpp.config.ResponseCompletion;
+import com.telenordigital.sms.smpp.config.SmppConnectionConfig;
+import com.telenordigital.sms.smpp.config.TransportConfig;
+
+/**
+ * Copies a connection config with some of its components changed, so a test changing one of them
+ * does not repeat the whole constructor.
+ */
+final class ConfigBuilder {
+  private final SmppConnectionConfig c;
+  private int windowSize;
+  private TransportConfig transport;
+  private ResponseCompletion responseCompletion;
+  private FlushConfig flush;
+  private CaptureConfig capture;
+  private CircuitBreakerConfig circuitBreaker;
+
+  private ConfigBuilder(final SmppConnectionConfig c) {
+    this.c = c;
+    this.windowSize = c.windowSize();
+    this.transport = c.transport();
+    this.responseCompletion = c.responseCompletion();
+    this.flush = c.flush();
+    this.capture = c.capture();
+    this.circuitBreaker = c.circuitBreaker();
+  }
+
+  static ConfigBuilder from(final SmppConnectionConfig config) {
+    return new ConfigBuilder(config);
+  }
+
+  ConfigBuilder windowSize(final int windowSize) {
+    this.windowSize = windowSize;
+    return this;
+  }
+
+  ConfigBuilder transport(final TransportConfig transport) {
+    this.transport = transport;
+    return this;
+  }
+
+  ConfigBuilder responseCompletion(final ResponseCompletion responseCompletion) {
+    this.responseCompletion = responseCompletion;
+    return this;
+  }
+
+  ConfigBuilder flush(final FlushConfig flush) {
+    this.flush = flush;
+    return this;
+  }
+
+  ConfigBuilder capture(final CaptureConfig capture) {
+    this.capture = capture;
+    return this;
+  }
+
+  ConfigBuilder circuitBreaker(final CircuitBreakerConfig circuitBreaker) {
+    this.circuitBreaker = circuitBreaker;
+    return this;
+  }
+
+  SmppConnectionConfig build() {
+    return new SmppConnectionConfig(
+        c.host(),
+        c.port(),
+        c.numberOfBinds(),
+        c.bindType(),
+        c.defaultEncoding(),
+        c.reconnectTimeSeconds(),
+        c.idleTimeSeconds(),
+        c.requestTimeoutSeconds(),
+        c.shutdownTimeoutSeconds(),
+        c.handlerTimeoutSeconds(),
+        c.systemId(),
+        c.password(),
+        c.systemType(),
+        c.tls(),
+        c.splitWithUdh(),
+        windowSize,
+        c.useNetworkSpecificTonForShortCode(),
+        transport,
+        responseCompletion,
+        flush,
+        capture,
+        c.windowQueue(),
+        c.throttle(),
+        c.adaptiveWindow(),
+        circuitBreaker,
+        c.submitEncoding(),
+        c.nationalLanguages());
+  }
+}
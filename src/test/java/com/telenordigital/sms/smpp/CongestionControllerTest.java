@@ -0,0 +1,66 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.telenordigital.sms.smpp.config.CongestionConfig;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class CongestionControllerTest {
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void additiveIncreaseMultiplicativeDecrease() {
+    final var bucket = new TokenBucket(100, 1, 0);
+    final var controller =
+        new CongestionController(bucket, 100, new CongestionConfig(0.5, 10, 20, 1000), 0);
+
+    controller.onResponse(CongestionController.ESME_RTHROTTLED, 10 * MS);
+    assertThat(bucket.rate()).isEqualTo(50);
+    // responses to requests sent before the cut do not cut again
+    controller.onResponse(CongestionController.ESME_RMSGQFUL, 500 * MS);
+    assertThat(bucket.rate()).isEqualTo(50);
+    controller.onResponse(CongestionController.ESME_RTHROTTLED, 1010 * MS);
+    assertThat(bucket.rate()).isEqualTo(25);
+    // never below the minimum
+    controller.onResponse(CongestionController.ESME_RTHROTTLED, 2010 * MS);
+    assertThat(bucket.rate()).isEqualTo(20);
+
+    // +10/s for every second of successful responses
+    controller.onResponse(0, 2510 * MS);
+    assertThat(bucket.rate()).isEqualTo(25);
+    controller.onResponse(0, 3010 * MS);
+    assertThat(bucket.rate()).isEqualTo(30);
+    // an idle period counts as one second at most
+    controller.onResponse(0, 60_000 * MS);
+    assertThat(bucket.rate()).isEqualTo(40);
+    // other errors do not change the rate
+    controller.onResponse(0x0B, 70_000 * MS);
+    assertThat(bucket.rate()).isEqualTo(40);
+
+    for (int i = 1; i <= 10; i++) {
+      controller.onResponse(0, (70_000 + i * 1000) * MS);
+    }
+    assertThat(bucket.rate()).isEqualTo(100);
+  }
+}
@@ -0,0 +1,103 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class InFlightWindowTest {
+
+  @Test
+  public void insertionOrder() {
+    final var window = new InFlightWindow<String>(3);
+    assertThat(window.put(10, "a", 10)).isTrue();
+    assertThat(window.put(11, "b", 11)).isTrue();
+    assertThat(window.put(12, "c", 12)).isTrue();
+    assertThat(window.isFull()).isTrue();
+    assertThat(window.put(13, "d", 13)).isFalse();
+
+    assertThat(window.remove(11)).isEqualTo("b");
+    assertThat(window.remove(11)).isNull();
+    assertThat(window.put(13, "d", 13)).isTrue();
+
+    assertThat(window.addedNanos(13)).isEqualTo(13);
+    assertThat(window.addedNanos(11)).isEqualTo(-1);
+    assertThat(window.oldestAddedNanos()).isEqualTo(10);
+    assertThat(window.removeOldest()).isEqualTo("a");
+    assertThat(window.removeOldest()).isEqualTo("c");
+    assertThat(window.oldest()).isEqualTo("d");
+    assertThat(window.size()).isEqualTo(1);
+    assertThat(window.removeOldest()).isEqualTo("d");
+    assertThat(window.removeOldest()).isNull();
+    assertThat(window.isEmpty()).isTrue();
+  }
+
+  @Test
+  public void rejectsPresentSequenceNumber() {
+    final var window = new InFlightWindow<String>(3);
+    assertThat(window.put(10, "a", 10)).isTrue();
+    assertThat(window.put(10, "b", 11)).isFalse();
+    assertThat(window.size()).isEqualTo(1);
+    assertThat(window.addedNanos(10)).isEqualTo(10);
+    assertThat(window.remove(10)).isEqualTo("a");
+    assertThat(window.put(10, "b", 12)).isTrue();
+    assertThat(window.oldest()).isEqualTo("b");
+  }
+
+  @Test
+  public void matchesLinkedHashMap() {
+    final var random = new Random(42);
+    final int capacity = 1000;
+    final var window = new InFlightWindow<Integer>(capacity);
+    final var expected = new LinkedHashMap<Integer, Integer>();
+    int sequence = random.nextInt();
+
+    for (int i = 0; i < 200_000; i++) {
+      final int op = random.nextInt(10);
+      if (op < 5) {
+        final boolean added = window.put(sequence, sequence, sequence);
+        assertThat(added).isEqualTo(expected.size() < capacity);
+        if (added) {
+          expected.put(sequence, sequence);
+        }
+        // sequence numbers are sparse on a single connection
+        sequence += 1 + random.nextInt(4);
+      } else if (op < 9 && !expected.isEmpty()) {
+        final var keys = new ArrayList<>(expected.keySet());
+        final int key = keys.get(random.nextInt(Math.min(keys.size(), 50)));
+        assertThat(window.remove(key)).isEqualTo(expected.remove(key));
+      } else {
+        final var oldest = expected.keySet().stream().findFirst().orElse(null);
+        assertThat(window.removeOldest()).isEqualTo(oldest);
+        expected.remove(oldest);
+      }
+      assertThat(window.size()).isEqualTo(expected.size());
+    }
+    for (final var key : expected.keySet()) {
+      assertThat(window.remove(key)).isEqualTo(key);
+    }
+    assertThat(window.isEmpty()).isTrue();
+  }
+}
@@ -0,0 +1,395 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.telenordigital.sms.smpp.config.CircuitBreakerConfig;
+import com.telenordigital.sms.smpp.config.ResponseCompletion;
+import com.telenordigital.sms.smpp.config.ThrottleConfig;
+import com.telenordigital.sms.smpp.config.WindowQueueConfig;
+import com.telenordigital.sms.smpp.pdu.EnquireLink;
+import com.telenordigital.sms.smpp.pdu.EnquireLinkResp;
+import com.telenordigital.sms.smpp.pdu.ResponsePdu;
+import com.telenordigital.sms.smpp.pdu.SubmitSm;
+import com.telenordigital.sms.smpp.pdu.SubmitSmResp;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class OutboundPduHandlerTest {
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static RequestResponse<ResponsePdu> enquireLink() {
+    return (RequestResponse) new RequestResponse<>(new EnquireLink());
+  }
+
+  @Test
+  public void expireWithoutTraffic() throws Exception {
+    final var handler =
+        new OutboundPduHandler(
+            10, 1, ResponseCompletion.INLINE, null, null, null, null, new ConnectionStats(), null);
+    final var channel = new EmbeddedChannel(handler);
+
+    final var first = enquireLink();
+    channel.writeOutbound(first);
+    Thread.sleep(500);
+    final var second = enquireLink();
+    channel.writeOutbound(second);
+    assertThat(handler.getOpenWindowSlots()).isEqualTo(8);
+
+    // only the first request is due
+    Thread.sleep(600);
+    channel.runScheduledPendingTasks();
+    assertThatThrownBy(first.responseFuture()::join)
+        .hasMessageContaining("Request expired. No response received in 1s");
+    assertThat(second.responseFuture()).isNotDone();
+    assertThat(handler.getOpenWindowSlots()).isEqualTo(9);
+
+    // the timer is re-armed for the next request
+    Thread.sleep(500);
+    channel.runScheduledPendingTasks();
+    assertThat(second.responseFuture()).isCompletedExceptionally();
+    assertThat(handler.getOpenWindowSlots()).isEqualTo(10);
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void responseBeforeExpiry() throws Exception {
+    final var handler =
+        new OutboundPduHandler(
+            10, 1, ResponseCompletion.INLINE, null, null, null, null, new ConnectionStats(), null);
+    final var channel = new EmbeddedChannel(handler);
+
+    final var request = enquireLink();
+    channel.writeOutbound(request);
+    channel.writeInbound(new EnquireLinkResp(0, request.request().sequenceNumber()));
+    assertThat(request.responseFuture()).isCompleted();
+
+    Thread.sleep(1100);
+    channel.runScheduledPendingTasks();
+    assertThat(request.responseFuture()).isCompleted().isNotCompletedExceptionally();
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public void reusedSequenceNumber() {
+    final var handler =
+        new OutboundPduHandler(
+            10, 60, ResponseCompletion.INLINE, null, null, null, null, new ConnectionStats(), null);
+    final var channel = new EmbeddedChannel(handler);
+
+    final var first = enquireLink();
+    final RequestResponse<ResponsePdu> reused =
+        (RequestResponse)
+            new RequestResponse<>(new EnquireLink(0, first.request().sequenceNumber()));
+    channel.writeOutbound(first, reused);
+    assertThatThrownBy(reused.responseFuture()::join).hasMessageContaining("Window is full");
+    assertThat(channel.outboundMessages()).containsExactly(first.request());
+    assertThat(handler.getOpenWindowSlots()).isEqualTo(9);
+
+    // the first request still gets its response
+    channel.writeInbound(new EnquireLinkResp(0, first.request().sequenceNumber()));
+    assertThat(first.responseFuture()).isCompleted().isNotCompletedExceptionally();
+    assertThat(handler.getOpenWindowSlots()).isEqualTo(10);
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void queueUntilSlotIsFree() throws Exception {
+    final var handler =
+        new OutboundPduHandler(
+            1,
+            10,
+            ResponseCompletion.INLINE,
+            null,
+            new WindowQueueConfig(1, 500),
+            null,
+            null,
+            new ConnectionStats(),
+            null);
+    final var channel = new EmbeddedChannel(handler);
+
+    final var first = enquireLink();
+    final var queued = enquireLink();
+    final var rejected = enquireLink();
+    channel.writeOutbound(first, queued, rejected);
+    assertThatThrownBy(rejected.responseFuture()::join).hasMessageContaining("Window is full");
+    assertThat(channel.outboundMessages()).containsExactly(first.request());
+    channel.outboundMessages().clear();
+
+    // the response frees the slot for the queued request
+    channel.writeInbound(new EnquireLinkResp(0, first.request().sequenceNumber()));
+    assertThat(first.responseFuture()).isCompleted();
+    assertThat(channel.outboundMessages()).containsExactly(queued.request());
+    assertThat(queued.responseFuture()).isNotDone();
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void queueWaitExpires() throws Exception {
+    final var handler =
+        new OutboundPduHandler(
+            1,
+            10,
+            ResponseCompletion.INLINE,
+            null,
+            new WindowQueueConfig(10, 200),
+            null,
+            null,
+            new ConnectionStats(),
+            null);
+    final var channel = new EmbeddedChannel(handler);
+
+    final var first = enquireLink();
+    final var queued = enquireLink();
+    channel.writeOutbound(first, queued);
+
+    Thread.sleep(300);
+    channel.runScheduledPendingTasks();
+    assertThatThrownBy(queued.responseFuture()::join)
+        .hasMessageContaining("Window is full. No slot within 200ms");
+    assertThat(first.responseFuture()).isNotDone();
+    channel.finishAndReleaseAll();
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static RequestResponse<ResponsePdu> submitSm() {
+    return (RequestResponse)
+        new RequestResponse<>(
+            SubmitSm.create(Clock.systemUTC(), "A", "Z", "hello", null, false, false).get(0));
+  }
+
+  @Test
+  public void throttle() throws Exception {
+    final var handler =
+        new OutboundPduHandler(
+            10,
+            10,
+            ResponseCompletion.INLINE,
+            null,
+            new WindowQueueConfig(10, 5000),
+            new ThrottleConfig(5),
+            null,
+            new ConnectionStats(),
+            null);
+    final var channel = new EmbeddedChannel(handler);
+
+    final var first = submitSm();
+    final var second = submitSm();
+    final var enquireLink = enquireLink();
+    channel.writeOutbound(first, second, enquireLink);
+    // enquire_link is not throttled
+    assertThat(channel.outboundMessages()).containsExactly(first.request(), enquireLink.request());
+    channel.outboundMessages().clear();
+
+    // the next token is available after 200ms
+    Thread.sleep(100);
+    channel.runScheduledPendingTasks();
+    assertThat(channel.outboundMessages()).isEmpty();
+    Thread.sleep(150);
+    channel.runScheduledPendingTasks();
+    assertThat(channel.outboundMessages()).containsExactly(second.request());
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void stats() throws Exception {
+    final var stats = new ConnectionStats();
+    final var handler =
+        new OutboundPduHandler(
+            10, 10, ResponseCompletion.INLINE, null, null, null, null, stats, null);
+    final var channel = new EmbeddedChannel(handler);
+
+    final var accepted = submitSm();
+    final var throttled = submitSm();
+    final var enquireLink = enquireLink();
+    channel.writeOutbound(accepted, throttled, enquireLink);
+    Thread.sleep(20);
+    channel.writeInbound(new SubmitSmResp(0, accepted.request().sequenceNumber(), "a", null));
+    assertThat(stats.latencyNanos()).isGreaterThanOrEqualTo(20_000_000);
+    assertThat(stats.errorRate()).isZero();
+
+    channel.writeInbound(new SubmitSmResp(0x58, throttled.request().sequenceNumber(), null, null));
+    assertThat(stats.errorRate()).isEqualTo(0.05);
+    // every status the circuit breaker or the retries treat as a failure is an error
+    assertThat(IntStream.of(0x08, 0x14, 0x58)).allMatch(ConnectionStats::isError);
+    assertThat(IntStream.of(0x00, 0x0B, 0x45)).noneMatch(ConnectionStats::isError);
+    // only submits are measured
+    final double latency = stats.latencyNanos();
+    channel.writeInbound(new EnquireLinkResp(0, enquireLink.request().sequenceNumber()));
+    assertThat(stats.latencyNanos()).isEqualTo(latency);
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void stallOpensCircuitBreaker() throws Exception {
+    final var scheduler = Executors.newSingleThreadScheduledExecutor();
+    final var breaker =
+        new CircuitBreaker(
+            "test", new CircuitBreakerConfig(5, 200, 60_000, 1), scheduler, () -> {});
+    final var handler =
+        new OutboundPduHandler(
+            10,
+            10,
+            ResponseCompletion.INLINE,
+            null,
+            null,
+            null,
+            null,
+            new ConnectionStats(),
+            breaker);
+    final var channel = new EmbeddedChannel(handler);
+
+    final var unanswered = submitSm();
+    channel.writeOutbound(unanswered);
+    Thread.sleep(100);
+    channel.runScheduledPendingTasks();
+    assertThat(breaker.state()).isEqualTo(SmppCircuitState.CLOSED);
+
+    // no response within the stall time
+    Thread.sleep(150);
+    channel.runScheduledPendingTasks();
+    assertThat(breaker.state()).isEqualTo(SmppCircuitState.OPEN);
+    assertThat(unanswered.responseFuture()).isNotDone();
+
+    final var rejected = submitSm();
+    final var enquireLink = enquireLink();
+    channel.writeOutbound(rejected, enquireLink);
+    assertThatThrownBy(rejected.responseFuture()::join)
+        .hasMessageContaining("Circuit breaker is OPEN");
+    // only submits are held back
+    assertThat(channel.outboundMessages())
+        .containsExactly(unanswered.request(), enquireLink.request());
+    scheduler.shutdownNow();
+    channel.finishAndReleaseAll();
+  }
+
+  private static MultipartRequest multipart(final int parts) {
+    return new MultipartRequest(
+        SubmitSm.create(Clock.systemUTC(), "A", "Z", "c".repeat(134 * parts), null, true, false)
+            .stream()
+            .map(RequestResponse::new)
+            .toList());
+  }
+
+  @Test
+  public void multipartAllOrNothing() throws Exception {
+    final var handler =
+        new OutboundPduHandler(
+            3, 10, ResponseCompletion.INLINE, null, null, null, null, new ConnectionStats(), null);
+    final var channel = new EmbeddedChannel(handler);
+
+    final var single = enquireLink();
+    final var message = multipart(3);
+    assertThat(message.pduCount()).isEqualTo(3);
+    channel.writeOutbound(single, message);
+    // none of the parts is sent
+    assertThat(channel.outboundMessages()).containsExactly(single.request());
+    assertThat(message.parts())
+        .allSatisfy(
+            p ->
+                assertThatThrownBy(p.responseFuture()::join)
+                    .hasMessageContaining("Window is full"));
+    channel.outboundMessages().clear();
+
+    channel.writeInbound(new EnquireLinkResp(0, single.request().sequenceNumber()));
+    final var retried = multipart(3);
+    channel.writeOutbound(retried);
+    assertThat(channel.outboundMessages()).hasSize(3);
+    assertThat(handler.getOpenWindowSlots()).isZero();
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void queuedMultipart() throws Exception {
+    final var handler =
+        new OutboundPduHandler(
+            2,
+            10,
+            ResponseCompletion.INLINE,
+            null,
+            new WindowQueueConfig(10, 5000),
+            null,
+            null,
+            new ConnectionStats(),
+            null);
+    final var channel = new EmbeddedChannel(handler);
+
+    final var first = enquireLink();
+    final var second = enquireLink();
+    final var message = multipart(2);
+    channel.writeOutbound(first, second, message);
+    assertThat(channel.outboundMessages()).hasSize(2);
+    channel.outboundMessages().clear();
+
+    // one free slot is not enough for the two parts
+    channel.writeInbound(new EnquireLinkResp(0, first.request().sequenceNumber()));
+    assertThat(channel.outboundMessages()).isEmpty();
+    channel.writeInbound(new EnquireLinkResp(0, second.request().sequenceNumber()));
+    assertThat(channel.outboundMessages()).hasSize(2);
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void queuedMultipartNotStarved() throws Exception {
+    final var handler =
+        new OutboundPduHandler(
+            3,
+            10,
+            ResponseCompletion.INLINE,
+            null,
+            new WindowQueueConfig(10, 5000),
+            null,
+            null,
+            new ConnectionStats(),
+            null);
+    final var channel = new EmbeddedChannel(handler);
+
+    final var sent = List.of(submitSm(), submitSm(), submitSm());
+    final var message = multipart(3);
+    sent.forEach(channel::writeOutbound);
+    channel.writeOutbound(message);
+    assertThat(channel.outboundMessages()).hasSize(3);
+    channel.outboundMessages().clear();
+
+    // the slots freed one by one are not taken by the single part submits arriving after the
+    // multipart message
+    final var later = new ArrayList<RequestResponse<ResponsePdu>>();
+    for (final var request : sent) {
+      assertThat(channel.outboundMessages()).isEmpty();
+      channel.writeInbound(new SubmitSmResp(0, request.request().sequenceNumber(), "a", null));
+      final var single = submitSm();
+      later.add(single);
+      channel.writeOutbound(single);
+    }
+    assertThat(channel.outboundMessages())
+        .containsExactlyElementsOf(message.parts().stream().map(p -> p.request()).toList());
+    assertThat(later).noneMatch(r -> r.responseFuture().isDone());
+    channel.finishAndReleaseAll();
+  }
+}
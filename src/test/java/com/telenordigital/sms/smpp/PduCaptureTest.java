@@ -0,0 +1,137 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.telenordigital.sms.smpp.config.BindType;
+import com.telenordigital.sms.smpp.config.CaptureConfig;
+import com.telenordigital.sms.smpp.config.DefaultEncoding;
+import com.telenordigital.sms.smpp.config.SmppConnectionConfig;
+import com.telenordigital.sms.smpp.pdu.SubmitSm;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.stream.IntStream;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+@Timeout(15)
+public class PduCaptureTest {
+  @RegisterExtension public static SmppServerExtension smppServer = new SmppServerExtension();
+
+  @Test
+  public void sampleRate() {
+    final var handler = new PduCaptureHandler(null, 0.25);
+    final long sampled = IntStream.range(1, 100_001).filter(handler::sampled).count();
+    assertThat(sampled).isBetween(24_000L, 26_000L);
+
+    assertThat(IntStream.range(1, 1000).noneMatch(new PduCaptureHandler(null, 0)::sampled))
+        .isTrue();
+    assertThat(IntStream.range(1, 1000).allMatch(new PduCaptureHandler(null, 1)::sampled)).isTrue();
+  }
+
+  @Test
+  public void capture(@TempDir final Path directory) throws Exception {
+    final var config =
+        ConfigBuilder.from(
+                new SmppConnectionConfig(
+                    "localhost",
+                    smppServer.getPort(),
+                    1,
+                    BindType.TRANSCEIVER,
+                    DefaultEncoding.LATIN1,
+                    1,
+                    10,
+                    10,
+                    5,
+                    10,
+                    "test",
+                    "test",
+                    "",
+                    null,
+                    false,
+                    100,
+                    false))
+            .capture(new CaptureConfig(directory, 1.0))
+            .build();
+
+    try (var connection = new SmppConnection(config, null, null)) {
+      Awaitility.await().until(connection::isActive);
+      final var submitSm =
+          SubmitSm.create(Clock.systemUTC(), "A", "Z", "hello", null, false, false).get(0);
+      connection.submit(submitSm).join();
+    }
+
+    try (var files = Files.list(directory)) {
+      final var file = files.findFirst().orElseThrow();
+      final var pdus = PduCaptureReader.read(file, StandardCharsets.ISO_8859_1);
+      assertThat(pdus)
+          .anyMatch(p -> !p.inbound() && p.pdu().startsWith("SUBMIT_SM "))
+          .anyMatch(p -> p.inbound() && p.pdu().startsWith("SubmitSmResp["));
+
+      final var submit = pdus.stream().filter(p -> p.pdu().startsWith("SUBMIT_SM ")).findFirst();
+      assertThat(pdus)
+          .filteredOn(p -> p.sequenceNumber() == submit.orElseThrow().sequenceNumber())
+          .hasSize(2);
+    }
+  }
+
+  @Test
+  public void rotate(@TempDir final Path directory) throws Exception {
+    try (var writer = new PduCaptureWriter(directory, "test", 1024, 2)) {
+      final var frame = Unpooled.wrappedBuffer(new byte[300]);
+      IntStream.range(0, 10).forEach(i -> writer.write(i, true, frame));
+    }
+    try (var files = Files.list(directory)) {
+      final var remaining = files.sorted().toList();
+      assertThat(remaining).hasSize(2);
+      // the newest files are kept
+      assertThat(PduCaptureReader.read(remaining.get(1), StandardCharsets.ISO_8859_1))
+          .last()
+          .matches(p -> p.timestamp().toEpochMilli() == 9);
+    }
+  }
+
+  @Test
+  public void dropWhenFull(@TempDir final Path directory) throws Exception {
+    final long written;
+    final long dropped;
+    try (var writer = new PduCaptureWriter(directory, "test", 1024 * 1024, 1, 1)) {
+      final var frame = Unpooled.wrappedBuffer(new byte[300]);
+      // the caller never waits for the writer thread
+      IntStream.range(0, 1000).forEach(i -> writer.write(i, true, frame));
+      writer.close();
+      dropped = writer.dropped();
+    }
+    try (var files = Files.list(directory)) {
+      written =
+          PduCaptureReader.read(files.findFirst().orElseThrow(), StandardCharsets.ISO_8859_1)
+              .size();
+    }
+    assertThat(written + dropped).isEqualTo(1000);
+  }
+}
@@ -0,0 +1,61 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+public class RetryBudgetTest {
+
+  @Test
+  public void burstThenRatio() {
+    final var budget = new RetryBudget(0.1, 2);
+    assertThat(budget.tryWithdraw()).isTrue();
+    assertThat(budget.tryWithdraw()).isTrue();
+    assertThat(budget.tryWithdraw()).isFalse();
+
+    // one retry per ten messages
+    budget.deposit(9);
+    assertThat(budget.tryWithdraw()).isFalse();
+    budget.deposit(1);
+    assertThat(budget.tryWithdraw()).isTrue();
+    assertThat(budget.tryWithdraw()).isFalse();
+  }
+
+  @Test
+  public void capped() {
+    final var budget = new RetryBudget(0.5, 3);
+    // a long quiet period saves up no more than the burst
+    budget.deposit(1000);
+    for (int i = 0; i < 3; i++) {
+      assertThat(budget.tryWithdraw()).isTrue();
+    }
+    assertThat(budget.tryWithdraw()).isFalse();
+  }
+
+  @Test
+  public void disabled() {
+    final var budget = new RetryBudget(0, 0);
+    budget.deposit(1000);
+    assertThat(budget.tryWithdraw()).isFalse();
+  }
+}
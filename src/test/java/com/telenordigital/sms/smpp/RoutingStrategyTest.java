@@ -0,0 +1,181 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.telenordigital.sms.smpp.config.Routing;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class RoutingStrategyTest {
+  private static final SmppSmsMt SMS = new SmppSmsMt("a", "b", "c", null);
+
+  private static SmppConnection connection(final int openSlots, final boolean writable) {
+    final var conn = mock(SmppConnection.class);
+    when(conn.getOpenWindowSlots()).thenReturn(openSlots);
+    when(conn.isWritable()).thenReturn(writable);
+    return conn;
+  }
+
+  @Test
+  public void leastLoaded() {
+    final var strategy = RoutingStrategy.create(Routing.LEAST_LOADED, List.of());
+    final var c1 = connection(5, true);
+    final var c2 = connection(10, false);
+    final var c3 = connection(8, true);
+    assertThat(strategy.select(SMS, new SmppConnection[] {c1, c2, c3})).isSameAs(c3);
+    assertThat(strategy.select(SMS, new SmppConnection[] {c2})).isNull();
+  }
+
+  @Test
+  public void powerOfTwoChoices() {
+    final var strategy = RoutingStrategy.create(Routing.POWER_OF_TWO_CHOICES, List.of());
+    final var c1 = connection(5, true);
+    final var c2 = connection(10, true);
+    // with two connections both are always compared
+    IntStream.range(0, 100)
+        .forEach(i -> assertThat(strategy.select(SMS, new SmppConnection[] {c1, c2})).isSameAs(c2));
+
+    final var full = connection(100, false);
+    assertThat(strategy.select(SMS, new SmppConnection[] {full, c1})).isSameAs(c1);
+    assertThat(strategy.select(SMS, new SmppConnection[] {full})).isNull();
+    assertThat(strategy.select(SMS, new SmppConnection[] {full, full, full, c1})).isSameAs(c1);
+  }
+
+  private static SmppConnection measured(
+      final long latencyMillis, final boolean error, final int inFlight) {
+    final var stats = new ConnectionStats();
+    stats.record(TimeUnit.MILLISECONDS.toNanos(latencyMillis), error);
+    final var conn = connection(10, true);
+    when(conn.getStats()).thenReturn(stats);
+    when(conn.getInFlight()).thenReturn(inFlight);
+    return conn;
+  }
+
+  @Test
+  public void latencyWeighted() {
+    final var strategy = RoutingStrategy.create(Routing.LATENCY_WEIGHTED, List.of());
+    final var fast = measured(10, false, 0);
+    final var slow = measured(50, false, 0);
+    assertThat(strategy.select(SMS, new SmppConnection[] {fast, slow})).isSameAs(fast);
+
+    // a fast connection with many requests waiting loses to an idle slower one
+    final var busy = measured(10, false, 9);
+    assertThat(strategy.select(SMS, new SmppConnection[] {busy, slow})).isSameAs(slow);
+
+    // failing connections are avoided
+    final var throttled = measured(10, true, 0);
+    assertThat(strategy.select(SMS, new SmppConnection[] {throttled, slow})).isSameAs(slow);
+
+    final var full = connection(100, false);
+    assertThat(strategy.select(SMS, new SmppConnection[] {full, slow})).isSameAs(slow);
+    assertThat(strategy.select(SMS, new SmppConnection[] {full})).isNull();
+
+    // a fast connection without open slots is skipped
+    final var saturated = measured(10, false, 10);
+    when(saturated.getOpenWindowSlots()).thenReturn(0);
+    assertThat(strategy.select(SMS, new SmppConnection[] {saturated, slow})).isSameAs(slow);
+    assertThat(strategy.select(SMS, new SmppConnection[] {saturated, saturated}))
+        .isSameAs(saturated);
+
+    // a connection without a response yet is compared by open slots, not by a latency of 0
+    final var fresh = connection(5, true);
+    when(fresh.getStats()).thenReturn(new ConnectionStats());
+    assertThat(strategy.select(SMS, new SmppConnection[] {fresh, slow})).isSameAs(slow);
+    when(fresh.getOpenWindowSlots()).thenReturn(20);
+    assertThat(strategy.select(SMS, new SmppConnection[] {fresh, slow})).isSameAs(fresh);
+  }
+
+  @Test
+  public void powerOfTwoChoicesSpreadsEqualLoad() {
+    final var strategy = RoutingStrategy.create(Routing.POWER_OF_TWO_CHOICES, List.of());
+    final var active =
+        IntStream.range(0, 4).mapToObj(i -> connection(10, true)).toArray(SmppConnection[]::new);
+    final Map<SmppConnection, Integer> counts = new HashMap<>();
+    IntStream.range(0, 4000)
+        .forEach(i -> counts.merge(strategy.select(SMS, active), 1, Integer::sum));
+    assertThat(counts).hasSize(4);
+    assertThat(counts.values()).allMatch(c -> c > 700);
+  }
+
+  private static SmppSmsMt sms(final int subscriber) {
+    return new SmppSmsMt("a", "4790" + subscriber, "c", null);
+  }
+
+  @Test
+  public void consistentHash() {
+    final var binds = IntStream.range(0, 4).mapToObj(i -> connection(10, true)).toList();
+    final var strategy = RoutingStrategy.create(Routing.CONSISTENT_HASH, binds);
+    final var active = binds.toArray(SmppConnection[]::new);
+    assertThat(strategy.preservesOrder()).isTrue();
+
+    final Map<Integer, SmppConnection> owners = new HashMap<>();
+    IntStream.range(0, 4000).forEach(i -> owners.put(i, strategy.select(sms(i), active)));
+    // the same subscriber always goes to the same bind
+    IntStream.range(0, 4000)
+        .forEach(i -> assertThat(strategy.select(sms(i), active)).isSameAs(owners.get(i)));
+    final Map<SmppConnection, Integer> counts = new HashMap<>();
+    owners.values().forEach(c -> counts.merge(c, 1, Integer::sum));
+    assertThat(counts).hasSize(4);
+    assertThat(counts.values()).allMatch(c -> c > 700 && c < 1300);
+
+    // a bind going down only moves its own subscribers
+    final var down = binds.get(1);
+    final var up = binds.stream().filter(c -> c != down).toArray(SmppConnection[]::new);
+    final Map<Integer, SmppConnection> fallbacks = new HashMap<>();
+    IntStream.range(0, 4000)
+        .forEach(
+            i -> {
+              final var conn = strategy.select(sms(i), up);
+              assertThat(conn).isNotSameAs(down);
+              if (owners.get(i) == down) {
+                fallbacks.put(i, conn);
+              } else {
+                assertThat(conn).isSameAs(owners.get(i));
+              }
+            });
+    // and they come back when it recovers
+    IntStream.range(0, 4000)
+        .forEach(i -> assertThat(strategy.select(sms(i), active)).isSameAs(owners.get(i)));
+
+    // a saturated window falls back to the same bind as when it is down
+    when(down.getOpenWindowSlots()).thenReturn(0);
+    fallbacks.forEach((i, conn) -> assertThat(strategy.select(sms(i), active)).isSameAs(conn));
+
+    // with every window saturated the owner queues the message, or the fallback when it is down
+    binds.forEach(c -> when(c.getOpenWindowSlots()).thenReturn(0));
+    IntStream.range(0, 4000)
+        .forEach(i -> assertThat(strategy.select(sms(i), active)).isSameAs(owners.get(i)));
+    fallbacks.forEach((i, conn) -> assertThat(strategy.select(sms(i), up)).isSameAs(conn));
+    IntStream.range(0, 4000)
+        .forEach(i -> assertThat(strategy.owner(sms(i))).isSameAs(owners.get(i)));
+
+    binds.forEach(c -> when(c.isWritable()).thenReturn(false));
+    assertThat(strategy.select(sms(1), active)).isNull();
+  }
+}
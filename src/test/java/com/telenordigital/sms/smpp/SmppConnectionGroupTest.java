@@ -24,17 +24,35 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import com.telenordigital.sms.smpp.config.BindType;
+import com.telenordigital.sms.smpp.config.CircuitBreakerConfig;
+import com.telenordigital.sms.smpp.config.DefaultEncoding;
+import com.telenordigital.sms.smpp.config.HandlerExecutor;
+import com.telenordigital.sms.smpp.config.RetryConfig;
+import com.telenordigital.sms.smpp.config.Routing;
 import com.telenordigital.sms.smpp.config.SmppConnectionConfig;
+import com.telenordigital.sms.smpp.config.SmppGroupConfig;
+import com.telenordigital.sms.smpp.config.Transport;
+import com.telenordigital.sms.smpp.config.TransportConfig;
 import com.telenordigital.sms.smpp.pdu.SubmitSmResp;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.nio.NioIoHandler;
 import java.time.Clock;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import org.awaitility.Awaitility;
 import org.junit.jupiter.api.Test;
@@ -78,6 +96,142 @@ public class SmppConnectionGroupTest {
     }
   }
 
+  @Test
+  public void submitAll() throws Exception {
+    final var c1 = new SmppConnectionConfig("localhost", smppServer1.getPort(), 10, 2);
+    final var c2 = new SmppConnectionConfig("localhost", smppServer2.getPort(), 10);
+
+    final var messages =
+        IntStream.range(0, 10)
+            .mapToObj(i -> new SmppSmsMt("a", "b", i == 3 ? "c".repeat(400) : "c" + i, null))
+            .toList();
+    try (var group =
+        new SmppConnectionGroup(Clock.systemUTC(), "group", List.of(c1, c2), null, null)) {
+      Awaitility.await()
+          .atMost(5, TimeUnit.SECONDS)
+          .until(() -> group.getNumberOfActiveConnections() == 3);
+
+      final var responses =
+          group.submitAll(messages).stream().map(CompletableFuture::join).toList();
+      assertThat(responses).hasSize(10).allMatch(r -> r.result() == SmppResultCode.SUCCESS);
+    }
+  }
+
+  @Test
+  public void submitAllBySlots() throws Exception {
+    final var c1 =
+        ConfigBuilder.from(new SmppConnectionConfig("localhost", smppServer1.getPort(), 10))
+            .windowSize(2)
+            .build();
+    final var c2 =
+        ConfigBuilder.from(new SmppConnectionConfig("localhost", smppServer2.getPort(), 10))
+            .windowSize(10)
+            .build();
+    final var groupConfig =
+        new SmppGroupConfig(0, HandlerExecutor.EVENT_LOOP, Routing.LEAST_LOADED);
+
+    final var messages =
+        IntStream.range(0, 12).mapToObj(i -> new SmppSmsMt("a", "b", "c" + i, null)).toList();
+    try (var group =
+        new SmppConnectionGroup(
+            Clock.systemUTC(), "group", groupConfig, List.of(c1, c2), null, null)) {
+      Awaitility.await()
+          .atMost(5, TimeUnit.SECONDS)
+          .until(() -> group.getNumberOfActiveConnections() == 2);
+
+      final var responses =
+          group.submitAll(messages).stream().map(CompletableFuture::join).toList();
+      assertThat(responses).allMatch(r -> r.result() == SmppResultCode.SUCCESS);
+      // the least loaded connection takes messages up to its open slots, then the other one
+      verify(smppServer2.getFirstSession().mock(), times(10))
+          .accept(any(com.cloudhopper.smpp.pdu.SubmitSm.class));
+      verify(smppServer1.getFirstSession().mock(), times(2))
+          .accept(any(com.cloudhopper.smpp.pdu.SubmitSm.class));
+    }
+  }
+
+  @Test
+  public void windowFullRoutedAgain() throws Exception {
+    final var c1 =
+        ConfigBuilder.from(new SmppConnectionConfig("localhost", smppServer1.getPort(), 10))
+            .windowSize(2)
+            .build();
+    final var c2 =
+        ConfigBuilder.from(new SmppConnectionConfig("localhost", smppServer2.getPort(), 10))
+            .windowSize(2)
+            .build();
+    // without retries, only a routing miss sends a rejected message to the other connection
+    final var groupConfig =
+        new SmppGroupConfig(
+            0,
+            HandlerExecutor.EVENT_LOOP,
+            Routing.CONSISTENT_HASH,
+            new RetryConfig(1, 0, 0, 1, 100));
+
+    // one subscriber, so the whole batch goes to the connection owning it
+    final var messages =
+        IntStream.range(0, 4).mapToObj(i -> new SmppSmsMt("a", "b", "c" + i, null)).toList();
+    try (var group =
+        new SmppConnectionGroup(
+            Clock.systemUTC(), "group", groupConfig, List.of(c1, c2), null, null)) {
+      Awaitility.await()
+          .atMost(5, TimeUnit.SECONDS)
+          .until(() -> group.getNumberOfActiveConnections() == 2);
+
+      final var responses =
+          group.submitAll(messages).stream().map(CompletableFuture::join).toList();
+      assertThat(responses).allMatch(r -> r.result() == SmppResultCode.SUCCESS);
+      verify(smppServer1.getFirstSession().mock(), times(2))
+          .accept(any(com.cloudhopper.smpp.pdu.SubmitSm.class));
+      verify(smppServer2.getFirstSession().mock(), times(2))
+          .accept(any(com.cloudhopper.smpp.pdu.SubmitSm.class));
+    }
+  }
+
+  @Test
+  public void sharedEventLoopGroup() throws Exception {
+    final var c1 = new SmppConnectionConfig("localhost", smppServer1.getPort(), 10, 2);
+    final var c2 = new SmppConnectionConfig("localhost", smppServer2.getPort(), 10);
+    final var eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory());
+
+    final var sms = new SmppSmsMt("a", "b", "c", null);
+    try {
+      try (var group =
+          new SmppConnectionGroup(
+              Clock.systemUTC(),
+              "group",
+              new SmppGroupConfig(),
+              eventLoopGroup,
+              List.of(c1, c2),
+              null,
+              null)) {
+        Awaitility.await()
+            .atMost(5, TimeUnit.SECONDS)
+            .until(() -> group.getNumberOfActiveConnections() == 3);
+
+        assertThat(group.submit(sms).get().result()).isEqualTo(SmppResultCode.SUCCESS);
+      }
+      // the event loop group belongs to the caller
+      assertThat(eventLoopGroup.isShuttingDown()).isFalse();
+    } finally {
+      eventLoopGroup.shutdownGracefully().syncUninterruptibly();
+    }
+  }
+
+  @Test
+  public void ioThreads() {
+    final var c1 = new SmppConnectionConfig("localhost", 1000, 10, 2);
+    final var c2 = new SmppConnectionConfig("localhost", 1000, 10);
+
+    assertThat(
+            SmppConnectionGroup.ioThreads(
+                new SmppGroupConfig(5, HandlerExecutor.EVENT_LOOP), List.of(c1)))
+        .isEqualTo(5);
+    assertThat(SmppConnectionGroup.ioThreads(new SmppGroupConfig(), List.of(c1, c2)))
+        .isEqualTo(Math.min(3, Runtime.getRuntime().availableProcessors()));
+    assertThat(SmppConnectionGroup.ioThreads(new SmppGroupConfig(), List.of())).isEqualTo(1);
+  }
+
   @Test
   public void mergeStatus() {
     final var allGood =
@@ -112,6 +266,54 @@ public class SmppConnectionGroupTest {
                 null));
   }
 
+  @Test
+  public void mapException() {
+    assertThat(
+            SmppConnectionGroup.mapException(
+                new CompletionException(new SmppBackpressureException("Not writable")), "d1"))
+        .isEqualTo(SmppResponse.backpressured("Not writable", "d1"));
+
+    assertThat(
+            SmppConnectionGroup.mapException(
+                    new CompletionException(new SmppException("Window is full")), "d1")
+                .result())
+        .isEqualTo(SmppResultCode.RETRIABLE_ERROR);
+  }
+
+  @Timeout(10)
+  @Test
+  public void callerExecutor() throws Exception {
+    final var c1 = new SmppConnectionConfig("localhost", smppServer1.getPort(), 10);
+    final var executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "caller-handler"));
+    final var handlerThread = new CompletableFuture<String>();
+    try {
+      try (var group =
+          new SmppConnectionGroup(
+              Clock.systemUTC(),
+              "group",
+              new SmppGroupConfig(0, executor, Routing.POWER_OF_TWO_CHOICES, new RetryConfig()),
+              List.of(c1),
+              null,
+              mo -> {
+                handlerThread.complete(Thread.currentThread().getName());
+                return CompletableFuture.completedFuture(null);
+              })) {
+        Awaitility.await()
+            .atMost(5, TimeUnit.SECONDS)
+            .until(() -> group.getNumberOfActiveConnections() == 1);
+
+        final var mo = new com.cloudhopper.smpp.pdu.DeliverSm();
+        mo.setShortMessage(new byte[] {0x61});
+        smppServer1.getFirstSession().smppSession().sendRequestPdu(mo, 2000, false);
+        assertThat(handlerThread.get(5, TimeUnit.SECONDS)).isEqualTo("caller-handler");
+      }
+      // the executor of the caller outlives the group
+      assertThat(executor.isShutdown()).isFalse();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   @SuppressWarnings("unchecked")
   @Timeout(10)
   @Test
@@ -120,8 +322,12 @@ public class SmppConnectionGroupTest {
     final var c2 = new SmppConnectionConfig("localhost", smppServer2.getPort(), 10);
 
     final var sms = new SmppSmsMt("a", "b", "c", null);
+    // least loaded routing is deterministic, two random choices may skip the blocked connection
+    final var groupConfig =
+        new SmppGroupConfig(0, HandlerExecutor.EVENT_LOOP, Routing.LEAST_LOADED);
     try (var group =
-        new SmppConnectionGroup(Clock.systemUTC(), "group", List.of(c1, c2), null, null)) {
+        new SmppConnectionGroup(
+            Clock.systemUTC(), "group", groupConfig, List.of(c1, c2), null, null)) {
 
       Awaitility.await()
           .atMost(1, TimeUnit.SECONDS)
@@ -203,6 +409,222 @@ public class SmppConnectionGroupTest {
     }
   }
 
+  // fails every submit_sm on the server with the status, and counts them
+  private static AtomicInteger failSubmits(final SmppServerExtension server, final int status) {
+    final var count = new AtomicInteger();
+    doAnswer(
+            invocation -> {
+              if (invocation.getArgument(0) instanceof com.cloudhopper.smpp.pdu.SubmitSm) {
+                count.incrementAndGet();
+                throw new SmppServerExtension.MockException(status);
+              }
+              return null;
+            })
+        .when(server.getFirstSession().mock())
+        .accept(any());
+    return count;
+  }
+
+  @Test
+  public void retryOnAnotherConnection() throws Exception {
+    final var c1 = new SmppConnectionConfig("localhost", smppServer1.getPort(), 10);
+    final var c2 = new SmppConnectionConfig("localhost", smppServer2.getPort(), 10);
+    final var groupConfig =
+        new SmppGroupConfig(
+            0,
+            HandlerExecutor.EVENT_LOOP,
+            Routing.POWER_OF_TWO_CHOICES,
+            new RetryConfig(2, 1, 5, 1, 100));
+    try (var group =
+        new SmppConnectionGroup(
+            Clock.systemUTC(), "test", groupConfig, List.of(c1, c2), null, null)) {
+      Awaitility.await()
+          .atMost(1, TimeUnit.SECONDS)
+          .until(() -> group.getNumberOfActiveConnections() == 2);
+
+      final var failed = failSubmits(smppServer1, 0x14);
+      final var responses =
+          IntStream.range(0, 20)
+              .mapToObj(i -> group.submit(new SmppSmsMt("a", "b" + i, "c", null)))
+              .toList();
+      // every message failing on the first connection is retried on the second one
+      assertThat(responses)
+          .allSatisfy(r -> assertThat(r.get().result()).isEqualTo(SmppResultCode.SUCCESS));
+      assertThat(failed.get()).isPositive();
+      reset(smppServer1.getFirstSession().mock());
+    }
+  }
+
+  @Test
+  public void retryBudget() throws Exception {
+    final var c1 = new SmppConnectionConfig("localhost", smppServer1.getPort(), 10);
+    final var groupConfig =
+        new SmppGroupConfig(
+            0,
+            HandlerExecutor.EVENT_LOOP,
+            Routing.POWER_OF_TWO_CHOICES,
+            new RetryConfig(3, 0, 0, 0, 3));
+    try (var group =
+        new SmppConnectionGroup(Clock.systemUTC(), "test", groupConfig, List.of(c1), null, null)) {
+      Awaitility.await()
+          .atMost(1, TimeUnit.SECONDS)
+          .until(() -> group.getNumberOfActiveConnections() == 1);
+
+      final var submitted = failSubmits(smppServer1, 0x14);
+      for (int i = 0; i < 5; i++) {
+        assertThat(group.submit(new SmppSmsMt("a", "b", "c", null)).get().result())
+            .isEqualTo(SmppResultCode.RETRIABLE_ERROR);
+      }
+      // the first message takes two retries, the second one the last retry of the budget
+      assertThat(submitted.get()).isEqualTo(8);
+      reset(smppServer1.getFirstSession().mock());
+    }
+  }
+
+  @Test
+  public void circuitBreaker() throws Exception {
+    final var c1 =
+        ConfigBuilder.from(new SmppConnectionConfig("localhost", smppServer1.getPort(), 10))
+            .circuitBreaker(new CircuitBreakerConfig(3, 5000, 60_000, 1))
+            .build();
+    final var c2 = new SmppConnectionConfig("localhost", smppServer2.getPort(), 10);
+    final var groupConfig =
+        new SmppGroupConfig(
+            0,
+            HandlerExecutor.EVENT_LOOP,
+            Routing.POWER_OF_TWO_CHOICES,
+            new RetryConfig(2, 0, 0, 1, 100));
+    try (var group =
+        new SmppConnectionGroup(
+            Clock.systemUTC(), "test", groupConfig, List.of(c1, c2), null, null)) {
+      Awaitility.await()
+          .atMost(1, TimeUnit.SECONDS)
+          .until(() -> group.getNumberOfActiveConnections() == 2);
+      assertThat(group.isHealthy()).isTrue();
+
+      final var failed = failSubmits(smppServer1, 0x14);
+      for (int i = 0; i < 20; i++) {
+        assertThat(group.submit(new SmppSmsMt("a", "b", "c", null)).get().result())
+            .isEqualTo(SmppResultCode.SUCCESS);
+      }
+      // the first connection is out of routing after three failures
+      assertThat(failed.get()).isEqualTo(3);
+      assertThat(group.connectionsWithCircuitState().get("test-0").get())
+          .isEqualTo(SmppCircuitState.OPEN);
+      assertThat(group.connectionsWithCircuitState().get("test-1").get())
+          .isEqualTo(SmppCircuitState.CLOSED);
+      assertThat(group.isHealthy()).isFalse();
+      reset(smppServer1.getFirstSession().mock());
+    }
+  }
+
+  @Test
+  public void halfOpenOnlyProbes() throws Exception {
+    final var c1 =
+        ConfigBuilder.from(new SmppConnectionConfig("localhost", smppServer1.getPort(), 10))
+            .circuitBreaker(new CircuitBreakerConfig(3, 5000, 300, 2))
+            .build();
+    final var c2 = new SmppConnectionConfig("localhost", smppServer2.getPort(), 10);
+    // without retries, a submit sent to the half-open connection beyond the probes would fail
+    final var groupConfig =
+        new SmppGroupConfig(
+            0,
+            HandlerExecutor.EVENT_LOOP,
+            Routing.POWER_OF_TWO_CHOICES,
+            new RetryConfig(1, 0, 0, 1, 100));
+    try (var group =
+        new SmppConnectionGroup(
+            Clock.systemUTC(), "test", groupConfig, List.of(c1, c2), null, null)) {
+      Awaitility.await()
+          .atMost(1, TimeUnit.SECONDS)
+          .until(() -> group.getNumberOfActiveConnections() == 2);
+
+      failSubmits(smppServer1, 0x14);
+      final var circuit = group.connectionsWithCircuitState().get("test-0");
+      while (circuit.get() == SmppCircuitState.CLOSED) {
+        group.submit(new SmppSmsMt("a", "b", "c", null)).get();
+      }
+      reset(smppServer1.getFirstSession().mock());
+
+      // traffic keeps flowing while the breaker opens, probes and closes again
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      final var states = new CopyOnWriteArrayList<SmppCircuitState>();
+      while (circuit.get() != SmppCircuitState.CLOSED && System.nanoTime() < deadline) {
+        states.add(circuit.get());
+        final var responses =
+            IntStream.range(0, 5)
+                .mapToObj(i -> group.submit(new SmppSmsMt("a", "b", "c", null)))
+                .toList();
+        assertThat(responses)
+            .allSatisfy(r -> assertThat(r.get().result()).isEqualTo(SmppResultCode.SUCCESS));
+      }
+      assertThat(states).contains(SmppCircuitState.HALF_OPEN);
+      assertThat(circuit.get()).isEqualTo(SmppCircuitState.CLOSED);
+    }
+  }
+
+  @Test
+  public void keyedProbesOnlyToOwner() throws Exception {
+    final var c1 =
+        ConfigBuilder.from(new SmppConnectionConfig("localhost", smppServer1.getPort(), 10))
+            .circuitBreaker(new CircuitBreakerConfig(3, 5000, 300, 2))
+            .build();
+    final var c2 = new SmppConnectionConfig("localhost", smppServer2.getPort(), 10);
+    final var groupConfig =
+        new SmppGroupConfig(
+            0,
+            HandlerExecutor.EVENT_LOOP,
+            Routing.CONSISTENT_HASH,
+            new RetryConfig(1, 0, 0, 1, 100));
+    // the ring depends on the order of the connections only, stand-ins find the owners
+    final var first = mock(SmppConnection.class);
+    final var ring = new ConsistentHashRouting(List.of(first, mock(SmppConnection.class)));
+    final var owned =
+        IntStream.range(0, 100)
+            .mapToObj(i -> new SmppSmsMt("a", String.valueOf(i), "c", null))
+            .collect(Collectors.partitioningBy(sms -> ring.owner(sms) == first));
+    final var toFirst = owned.get(true);
+    final var toSecond = owned.get(false);
+    assertThat(toFirst).isNotEmpty();
+    assertThat(toSecond).isNotEmpty();
+    try (var group =
+        new SmppConnectionGroup(
+            Clock.systemUTC(), "test", groupConfig, List.of(c1, c2), null, null)) {
+      Awaitility.await()
+          .atMost(1, TimeUnit.SECONDS)
+          .until(() -> group.getNumberOfActiveConnections() == 2);
+
+      failSubmits(smppServer1, 0x14);
+      final var circuit = group.connectionsWithCircuitState().get("test-0");
+      while (circuit.get() == SmppCircuitState.CLOSED) {
+        group.submit(toFirst.get(0)).get();
+      }
+      final var submitted = new AtomicInteger();
+      doAnswer(
+              invocation -> {
+                if (invocation.getArgument(0) instanceof com.cloudhopper.smpp.pdu.SubmitSm) {
+                  submitted.incrementAndGet();
+                }
+                return null;
+              })
+          .when(smppServer1.getFirstSession().mock())
+          .accept(any());
+      Awaitility.await()
+          .atMost(2, TimeUnit.SECONDS)
+          .until(() -> circuit.get() == SmppCircuitState.HALF_OPEN);
+
+      // another connection's subscribers are not used as probes
+      for (final var sms : toSecond) {
+        assertThat(group.submit(sms).get().result()).isEqualTo(SmppResultCode.SUCCESS);
+      }
+      assertThat(submitted).hasValue(0);
+
+      // its own subscribers are
+      assertThat(group.submit(toFirst.get(0)).get().result()).isEqualTo(SmppResultCode.SUCCESS);
+      assertThat(submitted).hasValue(1);
+    }
+  }
+
   private void mockSubmitSmResponse(int... commandStatus) {
     doAnswer(
             new Answer<Void>() {
@@ -219,4 +641,57 @@ public class SmppConnectionGroupTest {
         .when(smppServer1.getFirstSession().mock())
         .accept(any());
   }
+
+  @Test
+  public void backpressure() throws Exception {
+    try (var server = new StalledSmppServer()) {
+      final var config =
+          ConfigBuilder.from(
+                  new SmppConnectionConfig(
+                      "localhost",
+                      server.getPort(),
+                      1,
+                      BindType.TRANSCEIVER,
+                      DefaultEncoding.LATIN1,
+                      10,
+                      60,
+                      60,
+                      1,
+                      1,
+                      "test",
+                      "test",
+                      "",
+                      null,
+                      false,
+                      100_000,
+                      false))
+              .transport(new TransportConfig(Transport.AUTO, 0, 1024, 8 * 1024))
+              .build();
+      final var events = new CopyOnWriteArrayList<SmppWritabilityEvent>();
+      try (var group =
+          new SmppConnectionGroup(Clock.systemUTC(), "group", List.of(config), null, null)) {
+        group.addWritabilityListener(events::add);
+        Awaitility.await()
+            .atMost(5, TimeUnit.SECONDS)
+            .until(() -> group.getNumberOfActiveConnections() == 1);
+
+        // the message goes in the message_payload TLV, about 2 kB per submit_sm
+        final var sms = new SmppSmsMt("a", "b", "x".repeat(2000), null);
+        SmppResponse rejected = null;
+        for (int i = 0; i < 50_000 && rejected == null; i++) {
+          final var response = group.submit(sms);
+          if (response.isDone()) {
+            rejected = response.join();
+          }
+        }
+        assertThat(rejected).isNotNull();
+        assertThat(rejected.result()).isEqualTo(SmppResultCode.BACKPRESSURED);
+        Awaitility.await()
+            .atMost(5, TimeUnit.SECONDS)
+            .until(() -> events.stream().anyMatch(e -> !e.writable()));
+        assertThat(events.get(0).connection()).isEqualTo("group-0");
+        assertThat(events.get(0).writableConnections()).isZero();
+      }
+    }
+  }
 }
@@ -38,9 +38,13 @@ import com.cloudhopper.smpp.tlv.Tlv;
 import com.telenordigital.sms.smpp.SmppServerExtension.InvalidSequenceException;
 import com.telenordigital.sms.smpp.config.BindType;
 import com.telenordigital.sms.smpp.config.DefaultEncoding;
+import com.telenordigital.sms.smpp.config.FlushConfig;
+import com.telenordigital.sms.smpp.config.ResponseCompletion;
 import com.telenordigital.sms.smpp.config.SmppConnectionConfig;
 import com.telenordigital.sms.smpp.config.TlsConfig;
 import com.telenordigital.sms.smpp.pdu.SubmitSm;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.nio.NioIoHandler;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.time.Clock;
@@ -48,6 +52,7 @@ import java.util.Arrays;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -235,6 +240,41 @@ public class SmppConnectionTest {
     }
   }
 
+  @Test
+  public void moOnHandlerExecutor() throws Exception {
+    final var eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory());
+    final var executor =
+        Executors.newSingleThreadExecutor(r -> new Thread(r, "handler-executor-test"));
+    final var handlerThread = new CompletableFuture<String>();
+    try (var connection =
+        new SmppConnection(
+            plainConfig,
+            eventLoopGroup,
+            executor,
+            mo -> {
+              handlerThread.complete(Thread.currentThread().getName());
+              return moHandler.apply(mo);
+            },
+            drHandler)) {
+      waitUntilActive(connection, 4);
+
+      sendMo(true);
+
+      assertThat(receivedMo.get(3, TimeUnit.SECONDS).message()).isEqualTo("ab");
+      assertThat(handlerThread.get()).isEqualTo("handler-executor-test");
+
+      final var responses =
+          Awaitility.waitAtMost(1, TimeUnit.SECONDS)
+              .until(() -> plainServer.getFirstSession().responses(), list -> !list.isEmpty());
+      assertThat(responses)
+          .hasSize(1)
+          .allSatisfy(pdu -> assertThat(pdu.getResultMessage()).isEqualTo("OK"));
+    } finally {
+      executor.shutdown();
+      eventLoopGroup.shutdownGracefully().syncUninterruptibly();
+    }
+  }
+
   @Test
   public void unableToConnect() throws IOException {
     final var config = new SmppConnectionConfig("localhost", findFreePort(), 1);
@@ -254,6 +294,57 @@ public class SmppConnectionTest {
     submitSm(secureConfig);
   }
 
+  @Test
+  public void submitSmInlineCompletion() throws Exception {
+    submitSm(ConfigBuilder.from(plainConfig).responseCompletion(ResponseCompletion.INLINE).build());
+  }
+
+  @Test
+  public void submitSmFlushCoalescing() throws Exception {
+    submitSm(ConfigBuilder.from(plainConfig).flush(new FlushConfig(8, 200)).build());
+  }
+
+  @Test
+  public void submitAll() throws Exception {
+    try (var connection = new SmppConnection(plainConfig, moHandler, drHandler)) {
+      waitUntilActive(connection, 4);
+
+      final var submitSms =
+          IntStream.range(0, 20)
+              .mapToObj(
+                  i ->
+                      SubmitSm.create(Clock.systemUTC(), "A", "Z", "O" + i, null, false, false)
+                          .get(0))
+              .toList();
+      final var responses =
+          connection.submitAll(submitSms).stream().map(CompletableFuture::join).toList();
+      assertThat(responses).hasSize(20).allMatch(r -> r.commandStatus() == 0);
+    }
+  }
+
+  @Test
+  public void submitAllInactive() throws Exception {
+    final var config = new SmppConnectionConfig("localhost", findFreePort(), 1);
+
+    try (var connection = new SmppConnection(config, moHandler, drHandler)) {
+      final var submitSms =
+          IntStream.range(0, 3)
+              .mapToObj(
+                  i ->
+                      SubmitSm.create(Clock.systemUTC(), "A", "Z", "O" + i, null, false, false)
+                          .get(0))
+              .toList();
+      // every future fails, not only the first one
+      assertThat(connection.submitAll(submitSms))
+          .hasSize(3)
+          .allSatisfy(
+              f ->
+                  assertThatThrownBy(() -> f.get(1, TimeUnit.SECONDS))
+                      .isInstanceOf(ExecutionException.class)
+                      .hasMessageContaining("Connection is inactive"));
+    }
+  }
+
   public void submitSm(final SmppConnectionConfig config) throws Exception {
     try (var connection = new SmppConnection(config, moHandler, drHandler)) {
       waitUntilActive(connection, 4);
@@ -600,7 +691,8 @@ public class SmppConnectionTest {
           .allSatisfy(
               f ->
                   assertThatThrownBy(f::join)
-                      .hasMessage("com.telenordigital.sms.smpp.SmppException: Window is full"));
+                      .hasMessage(
+                          "com.telenordigital.sms.smpp.SmppWindowFullException: Window is full"));
     }
   }
 
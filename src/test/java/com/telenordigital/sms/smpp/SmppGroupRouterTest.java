@@ -0,0 +1,126 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class SmppGroupRouterTest {
+  private static final SmppSmsMt SMS = new SmppSmsMt("a", "b", "c", null);
+
+  private static SmppConnectionGroup group(final String name, final SmppResponse response) {
+    final var group = mock(SmppConnectionGroup.class);
+    when(group.isAvailable()).thenReturn(true);
+    when(group.hasCapacity()).thenReturn(true);
+    when(group.info()).thenReturn("Group: " + name);
+    when(group.submit(any())).thenReturn(CompletableFuture.completedFuture(response));
+    return group;
+  }
+
+  @Test
+  public void priorities() {
+    final var primary = group("primary", SmppResponse.success("1"));
+    final var secondary = group("secondary", SmppResponse.success("2"));
+    final var router =
+        new SmppGroupRouter(
+            "router", List.of(new SmppRoute(secondary, 2), new SmppRoute(primary, 1)));
+
+    assertThat(router.submit(SMS).join().references()).containsExactly("1");
+    verify(secondary, never()).submit(any());
+
+    // no round trip to a group without active connections
+    when(primary.isAvailable()).thenReturn(false);
+    assertThat(router.submit(SMS).join().references()).containsExactly("2");
+    verify(primary).submit(any());
+    assertThat(router.isHealthy()).isTrue();
+
+    // nor to a saturated one
+    when(primary.isAvailable()).thenReturn(true);
+    when(primary.hasCapacity()).thenReturn(false);
+    assertThat(router.submit(SMS).join().references()).containsExactly("2");
+    verify(primary).submit(any());
+
+    // saturated groups are not down
+    when(secondary.hasCapacity()).thenReturn(false);
+    assertThat(router.submit(SMS).join().result()).isEqualTo(SmppResultCode.BACKPRESSURED);
+    // without a round trip
+    verify(primary).submit(any());
+    verify(secondary, times(2)).submit(any());
+
+    when(secondary.isAvailable()).thenReturn(false);
+    when(primary.isAvailable()).thenReturn(false);
+    assertThat(router.submit(SMS).join().result())
+        .isEqualTo(SmppResultCode.RETRIABLE_ERROR_ROUTE_DOWN);
+    assertThat(router.isHealthy()).isFalse();
+  }
+
+  @Test
+  public void failover() {
+    final var down = group("down", SmppResponse.routeDown("No active connections", "d"));
+    final var full = group("full", SmppResponse.backpressured("No writable connections", "d"));
+    final var backup = group("backup", SmppResponse.success("3"));
+    final var router =
+        new SmppGroupRouter(
+            "router",
+            List.of(new SmppRoute(down, 1), new SmppRoute(full, 1), new SmppRoute(backup, 2)));
+
+    // both groups of the first tier are tried within the same call
+    assertThat(router.submit(SMS).join().references()).containsExactly("3");
+    verify(down).submit(any());
+    verify(full).submit(any());
+
+    // other errors are returned as they are
+    final var failing = group("failing", SmppResponse.failure("Generic failure", "d"));
+    final var other =
+        new SmppGroupRouter("router", List.of(new SmppRoute(failing, 1), new SmppRoute(backup, 2)));
+    assertThat(other.submit(SMS).join().result()).isEqualTo(SmppResultCode.GENERAL_FAILURE);
+
+    // the last answer when no group takes the message
+    final var only = new SmppGroupRouter("router", List.of(new SmppRoute(full, 1)));
+    assertThat(only.submit(SMS).join().result()).isEqualTo(SmppResultCode.BACKPRESSURED);
+  }
+
+  @Test
+  public void weights() {
+    final var heavy = group("heavy", SmppResponse.success("heavy"));
+    final var light = group("light", SmppResponse.success("light"));
+    final var router =
+        new SmppGroupRouter(
+            "router", List.of(new SmppRoute(heavy, 1, 3), new SmppRoute(light, 1, 1)));
+    final Map<String, Integer> counts = new HashMap<>();
+    IntStream.range(0, 4000)
+        .forEach(i -> counts.merge(router.submit(SMS).join().references().get(0), 1, Integer::sum));
+    assertThat(counts.get("heavy")).isBetween(2700, 3300);
+    assertThat(counts.get("light")).isBetween(700, 1300);
+  }
+}
@@ -0,0 +1,58 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+import com.telenordigital.sms.smpp.config.Transport;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.nio.NioIoHandler;
+import org.junit.jupiter.api.Test;
+
+public class SmppTransportTest {
+
+  @Test
+  public void resolve() {
+    assertThat(SmppTransport.resolve(Transport.NIO)).isEqualTo(SmppTransport.NIO);
+    assertThat(SmppTransport.resolve(Transport.AUTO).isAvailable()).isTrue();
+  }
+
+  @Test
+  public void unavailable() {
+    assumeFalse(Epoll.isAvailable());
+    assertThatThrownBy(() -> SmppTransport.resolve(Transport.EPOLL))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("EPOLL transport is not available");
+  }
+
+  @Test
+  public void ofEventLoopGroup() {
+    final var group = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory());
+    try {
+      assertThat(SmppTransport.of(group)).isEqualTo(SmppTransport.NIO);
+    } finally {
+      group.shutdownGracefully();
+    }
+  }
+}
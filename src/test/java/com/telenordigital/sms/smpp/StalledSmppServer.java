@@ -0,0 +1,85 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/** Answers the bind and never reads again, so the client's socket and write buffers fill up. */
+class StalledSmppServer implements AutoCloseable {
+  private static final int BIND_TRANSCEIVER_RESP = 0x80000009;
+
+  private final ServerSocket serverSocket;
+  private final Thread thread;
+  private volatile Socket socket;
+
+  StalledSmppServer() throws IOException {
+    serverSocket = new ServerSocket();
+    // a small receive window, the client's socket buffer fills sooner
+    serverSocket.setReceiveBufferSize(4096);
+    serverSocket.bind(new InetSocketAddress("localhost", 0));
+    thread = new Thread(this::serve, "stalled-smpp-server");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  private void serve() {
+    try {
+      socket = serverSocket.accept();
+      final var in = new DataInputStream(socket.getInputStream());
+      final var bind = new byte[in.readInt() - 4];
+      in.readFully(bind);
+      final int sequenceNumber =
+          ((bind[8] & 0xff) << 24)
+              | ((bind[9] & 0xff) << 16)
+              | ((bind[10] & 0xff) << 8)
+              | (bind[11] & 0xff);
+      final byte[] systemId = "stalled\0".getBytes(StandardCharsets.US_ASCII);
+      final var out = new DataOutputStream(socket.getOutputStream());
+      out.writeInt(16 + systemId.length);
+      out.writeInt(BIND_TRANSCEIVER_RESP);
+      out.writeInt(0);
+      out.writeInt(sequenceNumber);
+      out.write(systemId);
+      out.flush();
+    } catch (final IOException e) {
+      // closed
+    }
+  }
+
+  @Override
+  public void close() throws Exception {
+    if (socket != null) {
+      socket.close();
+    }
+    serverSocket.close();
+    thread.join(1000);
+  }
+}
@@ -0,0 +1,60 @@
+package com.telenordigital.sms.smpp;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class TokenBucketTest {
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void evenlySpaced() {
+    final var bucket = new TokenBucket(10, 2, 0);
+    // the burst is available at once
+    assertThat(bucket.tryAcquire(0)).isTrue();
+    assertThat(bucket.tryAcquire(0)).isTrue();
+    assertThat(bucket.tryAcquire(0)).isFalse();
+    assertThat(bucket.nanosUntilAvailable(0)).isEqualTo(100 * MS);
+
+    // then a token every 100ms
+    assertThat(bucket.tryAcquire(99 * MS)).isFalse();
+    assertThat(bucket.tryAcquire(100 * MS)).isTrue();
+    assertThat(bucket.nanosUntilAvailable(150 * MS)).isEqualTo(50 * MS);
+
+    // an idle bucket does not grow beyond the burst
+    assertThat(bucket.tryAcquire(10_000 * MS)).isTrue();
+    assertThat(bucket.tryAcquire(10_000 * MS)).isTrue();
+    assertThat(bucket.tryAcquire(10_000 * MS)).isFalse();
+  }
+
+  @Test
+  public void setRate() {
+    final var bucket = new TokenBucket(10, 1, 0);
+    assertThat(bucket.tryAcquire(0)).isTrue();
+    bucket.setRate(100, 50 * MS);
+    assertThat(bucket.rate()).isEqualTo(100);
+    // half a token earned at the old rate, the other half takes 5ms at the new rate
+    assertThat(bucket.nanosUntilAvailable(50 * MS)).isEqualTo(5 * MS);
+  }
+}
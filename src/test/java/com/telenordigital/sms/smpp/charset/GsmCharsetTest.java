@@ -22,6 +22,8 @@ package com.telenordigital.sms.smpp.charset;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
@@ -49,4 +51,74 @@ public class GsmCharsetTest {
     assertThat(gsm.canRepresent("ø")).isTrue();
     assertThat(gsm.canRepresent("ภาษาไทย")).isFalse();
   }
+
+  @Test
+  public void bulkMatchesCharset() {
+    final var text = "Hello {world} € 100 ÆØÅ æøå ΔΦΓ\n[~]^|\\ ภาษา";
+    final var buf = Unpooled.buffer();
+    final int written = gsm.encode(text, buf);
+    final byte[] viaCharset = text.getBytes(gsm);
+    assertThat(written).isEqualTo(viaCharset.length);
+    assertThat(ByteBufUtil.getBytes(buf)).isEqualTo(viaCharset);
+
+    assertThat(gsm.decode(buf)).isEqualTo(new String(viaCharset, gsm));
+    assertThat(gsm.decode(viaCharset, 0, viaCharset.length)).isEqualTo(new String(viaCharset, gsm));
+    // the buffer is not consumed
+    assertThat(buf.readableBytes()).isEqualTo(written);
+    buf.release();
+  }
+
+  @Test
+  public void decodeUnknown() {
+    // bytes above 0x7f, an unknown extension and a trailing escape
+    final byte[] bytes = {0x41, (byte) 0x80, 0x1b, 0x01, 0x42, 0x1b};
+    assertThat(gsm.decode(bytes, 0, bytes.length)).isEqualTo("A??B");
+    assertThat(new String(bytes, gsm)).isEqualTo("A??B");
+  }
+
+  @Test
+  public void countSeptets() {
+    assertThat(gsm.countSeptets("hei")).isEqualTo(3);
+    assertThat(gsm.countSeptets("{€}")).isEqualTo(6);
+    assertThat(gsm.countSeptets(new StringBuilder("ø"))).isEqualTo(1);
+    assertThat(gsm.countSeptets("ภาษาไทย")).isEqualTo(-1);
+    assertThat(gsm.canRepresent("{")).isFalse();
+  }
+
+  @Test
+  public void packUnpack() {
+    final byte[] hello = "hellohello".getBytes(gsm);
+    final byte[] packed = GsmCharset.pack(hello, 0, hello.length, 0);
+    assertThat(ByteBufUtil.hexDump(packed)).isEqualTo("e8329bfd4697d9ec37");
+    assertThat(GsmCharset.unpack(packed, 0, packed.length, 0)).isEqualTo(hello);
+
+    // seven spare bits are filled with a carriage return, which unpacking drops
+    final byte[] seven = "1234567".getBytes(gsm);
+    final byte[] packedSeven = GsmCharset.pack(seven, 0, seven.length, 0);
+    assertThat(packedSeven).hasSize(7);
+    assertThat(packedSeven[6] & 0xfe).isEqualTo(0x0d << 1);
+    assertThat(GsmCharset.unpack(packedSeven, 0, packedSeven.length, 0)).isEqualTo(seven);
+
+    // a last carriage return ending on an octet boundary is doubled, so it is not read as padding
+    final byte[] carriageReturn = "abcdefg\r".getBytes(gsm);
+    final byte[] packedCarriageReturn =
+        GsmCharset.pack(carriageReturn, 0, carriageReturn.length, 0);
+    assertThat(packedCarriageReturn).hasSize(8);
+    assertThat(packedCarriageReturn[7] & 0x7f).isEqualTo(0x0d);
+    assertThat(GsmCharset.unpack(packedCarriageReturn, 0, packedCarriageReturn.length, 0))
+        .isEqualTo("abcdefg\r\r".getBytes(gsm));
+
+    // two real carriage returns ending on an octet boundary are both kept
+    final byte[] carriageReturns = "abcdefg\r\r".getBytes(gsm);
+    final byte[] packedCarriageReturns =
+        GsmCharset.pack(carriageReturns, 0, carriageReturns.length, 0);
+    assertThat(packedCarriageReturns).hasSize(8);
+    assertThat(GsmCharset.unpack(packedCarriageReturns, 0, packedCarriageReturns.length, 0))
+        .isEqualTo(carriageReturns);
+
+    // one fill bit after a six octet user data header
+    final byte[] padded = GsmCharset.pack(hello, 0, hello.length, 1);
+    assertThat(padded[0] & 1).isZero();
+    assertThat(GsmCharset.unpack(padded, 0, padded.length, 1)).isEqualTo(hello);
+  }
 }
@@ -0,0 +1,67 @@
+package com.telenordigital.sms.smpp.charset;
+
+/*-
+ * #%L
+ * sms-smpp
+ * %%
+ * Copyright (C) 2022 Telenor Digital
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.netty.buffer.ByteBufUtil;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+public class GsmTablesTest {
+  @Test
+  public void defaultMatchesCharset() {
+    final var text = "Hello {world} € 100 ÆØÅ";
+    assertThat(GsmTables.DEFAULT.countSeptets(text)).isEqualTo(GsmCharset.GSM.countSeptets(text));
+    final var septets = new byte[GsmTables.DEFAULT.countSeptets(text)];
+    assertThat(GsmTables.DEFAULT.encode(text, septets, 0)).isEqualTo(septets.length);
+    assertThat(septets).isEqualTo(text.getBytes(GsmCharset.GSM));
+  }
+
+  @Test
+  public void shiftTables() {
+    final var portuguese =
+        new GsmTables(NationalShiftTables.PORTUGUESE, NationalShiftTables.PORTUGUESE);
+    // 'ã' is in the locking shift table, 'Φ' only in the single shift table
+    assertThat(portuguese.countSeptets("São Φa")).isEqualTo(7);
+    final var septets = new byte[7];
+    portuguese.encode("São Φa", septets, 0);
+    assertThat(ByteBufUtil.hexDump(septets)).isEqualTo("537b6f201b1261");
+    assertThat(GsmTables.DEFAULT.countSeptets("São")).isEqualTo(-1);
+
+    final var buf = ByteBuffer.allocate(portuguese.udhLength());
+    portuguese.writeUdh(buf);
+    assertThat(ByteBufUtil.hexDump(buf.array())).isEqualTo("240103250103");
+
+    assertThatThrownBy(() -> new GsmTables(NationalShiftTables.SPANISH, null))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void turkishLockingShift() {
+    final var turkish = new GsmTables(NationalShiftTables.TURKISH, null);
+    final var septets = new byte[4];
+    turkish.encode("İçığ", septets, 0);
+    assertThat(Arrays.toString(septets)).isEqualTo("[64, 96, 7, 12]");
+  }
+}
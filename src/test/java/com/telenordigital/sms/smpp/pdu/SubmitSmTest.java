@@ -22,12 +22,16 @@ package com.telenordigital.sms.smpp.pdu;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import com.telenordigital.sms.smpp.charset.GsmCharset;
+import com.telenordigital.sms.smpp.config.NationalLanguage;
+import com.telenordigital.sms.smpp.config.SubmitEncoding;
 import io.netty.buffer.ByteBufUtil;
 import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 
 public class SubmitSmTest extends PduTest {
@@ -134,21 +138,69 @@ public class SubmitSmTest extends PduTest {
   }
 
   @Test
-  public void splitMessage() {
-    final var latin1 = StandardCharsets.ISO_8859_1;
+  public void segmentPlan() {
+    final var single = SegmentPlan.create("aa", SubmitEncoding.LATIN1, List.of(), true);
+    assertThat(single.count()).isEqualTo(1);
+    assertThat(single.encode("aa", (byte) 0)[0]).isEqualTo(new byte[] {0x61, 0x61});
+
+    final var msg = "123456789 ".repeat(32);
+    final var split = SegmentPlan.create(msg, SubmitEncoding.LATIN1, List.of(), true);
+    assertThat(split.count()).isEqualTo(3);
+    final var parts = split.encode(msg, (byte) 0x41);
+    assertThat(parts[0]).hasSize(6 + 153);
+    assertThat(parts[1]).hasSize(6 + 153);
+    assertThat(ByteBufUtil.hexDump(parts[2]))
+        .isEqualTo("050003410303" + "3738392031323334353637383920");
+
+    // an exact multiple of the part size has no empty last part
+    assertThat(SegmentPlan.create("a".repeat(306), SubmitEncoding.LATIN1, List.of(), true).count())
+        .isEqualTo(2);
+    // the SMSC splits the message_payload TLV
+    assertThat(SegmentPlan.create(msg, SubmitEncoding.LATIN1, List.of(), false).count())
+        .isEqualTo(1);
+
+    final var ucs2 = SegmentPlan.create("Hey 😬", SubmitEncoding.LATIN1, List.of(), true);
+    assertThat(ucs2.dataCoding()).isEqualTo(PduConstants.DATA_CODING_UCS2);
+    assertThat(ucs2.encode("Hey 😬", (byte) 0)[0])
+        .isEqualTo("Hey 😬".getBytes(StandardCharsets.UTF_16BE));
+  }
 
-    final var msg1 = "aa";
-    final var split1 = SubmitSm.splitMessage(msg1.getBytes(latin1), 160);
-    assertThat(split1).hasSize(1);
-    assertThat(split1.get(0).message()).isEqualTo(new byte[] {0x61, 0x61});
+  @Test
+  public void segmentation() {
+    // 67 UTF-16 units would end in the middle of the 34th emoji
+    final var emoji = "😬".repeat(40);
+    final var parts = SegmentPlan.create(emoji, SubmitEncoding.LATIN1, List.of(), true);
+    assertThat(parts.count()).isEqualTo(2);
+    final var encoded = parts.encode(emoji, (byte) 0x41);
+    assertThat(new String(encoded[0], 6, encoded[0].length - 6, StandardCharsets.UTF_16BE))
+        .isEqualTo("😬".repeat(33));
+    assertThat(new String(encoded[1], 6, encoded[1].length - 6, StandardCharsets.UTF_16BE))
+        .isEqualTo("😬".repeat(7));
+
+    // a single short message is filled up to its limit
+    assertThat(countParts("a".repeat(159), true, SubmitEncoding.LATIN1)).isEqualTo(1);
+    assertThat(countParts("a".repeat(160), true, SubmitEncoding.LATIN1)).isEqualTo(2);
+    assertThat(countParts("ó".repeat(70), true, SubmitEncoding.LATIN1)).isEqualTo(1);
+    assertThat(countParts("ó".repeat(71), true, SubmitEncoding.LATIN1)).isEqualTo(2);
+    assertThat(countParts("€".repeat(80), true, SubmitEncoding.GSM7)).isEqualTo(1);
+
+    // 76 euro signs fill 152 septets, the escape of the 77th does not fit in the first part
+    final var euros = SegmentPlan.create("€".repeat(100), SubmitEncoding.GSM7, List.of(), true);
+    final var euroParts = euros.encode("€".repeat(100), (byte) 0x41);
+    assertThat(euroParts.length).isEqualTo(2);
+    assertThat(euroParts[0]).hasSize(6 + 152);
+    assertThat(euroParts[1]).hasSize(6 + 48);
+
+    // the SMSC splits the message_payload TLV of a single submit_sm
+    final var payload =
+        SegmentPlan.create("a".repeat(400), SubmitEncoding.LATIN1, List.of(), false);
+    assertThat(payload.count()).isEqualTo(1);
+    assertThat(payload.parts()).isEqualTo(3);
+  }
 
-    final var msg2 = "123456789 123456789";
-    final var split2 = SubmitSm.splitMessage(msg2.getBytes(latin1), 9);
-    assertThat(split2).hasSize(7);
-    assertThat(split2.get(0).message()).isEqualTo(new byte[] {0x31, 0x32, 0x33});
-    assertThat(split2.get(1).message()).isEqualTo(new byte[] {0x34, 0x35, 0x36});
-    assertThat(split2.get(2).message()).isEqualTo(new byte[] {0x37, 0x38, 0x39});
-    assertThat(split2.get(6).message()).isEqualTo(new byte[] {0x39});
+  private static int countParts(
+      final String message, final boolean splitWithUdh, final SubmitEncoding encoding) {
+    return SubmitSm.countParts(message, splitWithUdh, encoding, List.of());
   }
 
   @Test
@@ -203,4 +255,108 @@ public class SubmitSmTest extends PduTest {
     assertThat(sender.ton()).isEqualTo(PduConstants.TON_NETWORK_SPECIFIC);
     assertThat(sender.npi()).isEqualTo(PduConstants.NPI_UNKNOWN);
   }
+
+  @Test
+  void gsm7() {
+    final var single = create("a".repeat(160), SubmitEncoding.GSM7);
+    assertThat(single).hasSize(1);
+    assertThat(single.get(0).dataCoding()).isEqualTo(PduConstants.DATA_CODING_DEFAULT);
+    assertThat(single.get(0).encodedShortMessage().length()).isEqualTo(160);
+
+    final var split = create("a".repeat(161), SubmitEncoding.GSM7);
+    assertThat(split).hasSize(2);
+    assertThat(split.get(0).encodedShortMessage().length()).isEqualTo(6 + 153);
+    assertThat(split.get(1).encodedShortMessage().length()).isEqualTo(6 + 8);
+    assertThat(split.get(0).encodedShortMessage().toString()).startsWith("050003410201");
+
+    // the escape and the euro sign it selects stay in the second part
+    final var escaped = create("a".repeat(152) + "€" + "b".repeat(10), SubmitEncoding.GSM7);
+    assertThat(escaped).hasSize(2);
+    assertThat(escaped.get(0).encodedShortMessage().length()).isEqualTo(6 + 152);
+    assertThat(escaped.get(1).encodedShortMessage().toString())
+        .isEqualTo("0500034102021b65" + "62".repeat(10));
+
+    // outside the GSM alphabet
+    final var ucs2 = create("ภาษา", SubmitEncoding.GSM7);
+    assertThat(ucs2.get(0).dataCoding()).isEqualTo(PduConstants.DATA_CODING_UCS2);
+  }
+
+  @Test
+  void gsm7Packed() {
+    final var single = create("a".repeat(160), SubmitEncoding.GSM7_PACKED);
+    assertThat(single).hasSize(1);
+    assertThat(single.get(0).encodedShortMessage().length()).isEqualTo(140);
+
+    final var split = create("a".repeat(306), SubmitEncoding.GSM7_PACKED);
+    assertThat(split).hasSize(2);
+    final byte[] part = split.get(0).encodedShortMessage().array();
+    assertThat(part).hasSize(140);
+    final byte[] septets = GsmCharset.unpack(part, 6, part.length - 6, 1);
+    assertThat(new String(septets, GsmCharset.GSM)).isEqualTo("a".repeat(153));
+
+    // a carriage return filling the segment leaves no room for the one doubling it
+    final var carriageReturn = create("a".repeat(159) + "\r", SubmitEncoding.GSM7_PACKED);
+    assertThat(carriageReturn).hasSize(2);
+    final byte[] last = carriageReturn.get(1).encodedShortMessage().array();
+    assertThat(GsmCharset.unpack(last, 6, last.length - 6, 1))
+        .isEqualTo("aaaaaa\r".getBytes(GsmCharset.GSM));
+    final var shorter = create("a".repeat(151) + "\r", SubmitEncoding.GSM7_PACKED);
+    assertThat(shorter).hasSize(1);
+    assertThat(shorter.get(0).encodedShortMessage().length()).isEqualTo(134);
+  }
+
+  @Test
+  void nationalLanguages() {
+    final var turkish = List.of(NationalLanguage.TURKISH);
+    // the locking shift table has 'ş', the single shift table takes two septets per 'ş'
+    final var locking = create("ş".repeat(100), SubmitEncoding.GSM7, turkish);
+    assertThat(locking).hasSize(1);
+    assertThat(locking.get(0).udhUsed()).isTrue();
+    assertThat(locking.get(0).encodedShortMessage().toString())
+        .isEqualTo("03250101" + "1d".repeat(100));
+
+    final var single = create("Şahin", SubmitEncoding.GSM7, turkish);
+    assertThat(single.get(0).encodedShortMessage().toString()).isEqualTo("032401011b536168696e");
+
+    // the default alphabet needs no header
+    assertThat(create("hei", SubmitEncoding.GSM7, turkish).get(0).udhUsed()).isFalse();
+    // without the language the message goes out as UCS2
+    assertThat(create("Şahin", SubmitEncoding.GSM7).get(0).dataCoding())
+        .isEqualTo(PduConstants.DATA_CODING_UCS2);
+
+    final var spanish =
+        create("Acción", SubmitEncoding.GSM7_PACKED, List.of(NationalLanguage.SPANISH));
+    final byte[] packed = spanish.get(0).encodedShortMessage().array();
+    assertThat(ByteBufUtil.hexDump(packed, 0, 4)).isEqualTo("03240102");
+    // three fill bits align the septets after the four octet header
+    final byte[] septets = GsmCharset.unpack(packed, 4, packed.length - 4, 3);
+    assertThat(ByteBufUtil.hexDump(septets)).isEqualTo("416363691b6f6e");
+
+    final var long_ = create("ş".repeat(300), SubmitEncoding.GSM7_PACKED, turkish);
+    assertThat(long_).hasSize(3);
+    final byte[] part = long_.get(0).encodedShortMessage().array();
+    assertThat(part).hasSize(140);
+    assertThat(ByteBufUtil.hexDump(part, 0, 9)).isEqualTo("080003410301250101");
+  }
+
+  private static List<SubmitSm> create(final String message, final SubmitEncoding encoding) {
+    return create(message, encoding, List.of());
+  }
+
+  private static List<SubmitSm> create(
+      final String message,
+      final SubmitEncoding encoding,
+      final List<NationalLanguage> nationalLanguages) {
+    return SubmitSm.create(
+        Clock.systemUTC(),
+        "40404",
+        "4799999999",
+        message,
+        null,
+        true,
+        () -> (byte) 0x41,
+        false,
+        encoding,
+        nationalLanguages);
+  }
 }